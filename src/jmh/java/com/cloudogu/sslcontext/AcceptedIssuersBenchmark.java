@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+
+/**
+ * Compares {@link TrustManagerChain#getAcceptedIssuers()} with merging the issuers of all trust managers on every
+ * call, as it was done before the issuers became part of the {@link TrustSnapshot}. Run with the gc profiler to
+ * see the allocation rate of both variants.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AcceptedIssuersBenchmark {
+
+  private TrustManagerChain chain;
+  private X509TrustManager platformTrustManager;
+  private X509TrustManager storedTrustManager;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    TrustedCertificatesStore store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), new SimpleMeterRegistry());
+    for (int i = 0; i < 10; i++) {
+      X509Certificate certificate = createX509Cert(
+        createKeyPair(), Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS)
+      );
+      store.add(new Certificate(certificate.getEncoded(), Certificate.Error.UNKNOWN));
+    }
+    chain = new TrustManagerChain(store, new PlatformTrustManagers(new SimpleMeterRegistry()), new SimpleMeterRegistry());
+    platformTrustManager = createTrustManager(null);
+    storedTrustManager = createTrustManager(store.getKeyStore());
+  }
+
+  private X509TrustManager createTrustManager(KeyStore keyStore) throws GeneralSecurityException {
+    TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    factory.init(keyStore);
+    for (TrustManager trustManager : factory.getTrustManagers()) {
+      if (trustManager instanceof X509TrustManager) {
+        return (X509TrustManager) trustManager;
+      }
+    }
+    throw new IllegalStateException("no x509 trust manager found");
+  }
+
+  @Benchmark
+  public X509Certificate[] mergeOnEveryCall() {
+    Set<X509Certificate> acceptedIssuers = new HashSet<>();
+    acceptedIssuers.addAll(Arrays.asList(platformTrustManager.getAcceptedIssuers()));
+    acceptedIssuers.addAll(Arrays.asList(storedTrustManager.getAcceptedIssuers()));
+    return acceptedIssuers.toArray(new X509Certificate[0]);
+  }
+
+  @Benchmark
+  public X509Certificate[] snapshot() {
+    return chain.getAcceptedIssuers();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sonia.scm.store.InMemoryDataStoreFactory;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+
+/**
+ * Measures the reject path of the {@link CapturingTrustManager}, which verifies an unknown chain with the
+ * {@link TrustManagerChain} and hands it to the {@link RejectedCertificateCollector}. The collector is never
+ * flushed, so the numbers contain the capture on the handshake thread only, not the write to the store. Compare
+ * with the {@code rejected} outcome of the {@link TrustCheckBenchmark} to see the overhead of the capture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaptureBenchmark {
+
+  private CapturingTrustManager trustManager;
+  private X509Certificate[] serverChain;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    TrustedCertificatesStore trustedCertificatesStore = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), new SimpleMeterRegistry());
+    CertificateStore store = new CertificateStore(
+      new InMemoryDataStoreFactory(), new InMemoryBlobStoreFactory(), trustedCertificatesStore, new SimpleMeterRegistry()
+    );
+    RejectedCertificateCollector collector = new RejectedCertificateCollector(
+      store, new SimpleMeterRegistry(), RejectedCertificateCollector.CAPACITY
+    );
+    TrustManagerChain chain = new TrustManagerChain(
+      trustedCertificatesStore, new PlatformTrustManagers(new SimpleMeterRegistry()), new SimpleMeterRegistry()
+    );
+    trustManager = new CapturingTrustManager(collector, chain, new SimpleMeterRegistry());
+
+    serverChain = new X509Certificate[]{
+      createX509Cert(createKeyPair(), Instant.now().minus(1, ChronoUnit.MINUTES), Instant.now().plus(1, ChronoUnit.DAYS))
+    };
+  }
+
+  @Benchmark
+  public boolean reject() {
+    try {
+      trustManager.checkServerTrusted(serverChain, "RSA");
+      return true;
+    } catch (CertificateException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+
+/**
+ * Measures the construction of a {@link Certificate} from its encoded form, which is dominated by the SHA-1
+ * fingerprint. Every captured chain and every restored store entry creates one certificate per chain element.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateBenchmark {
+
+  private byte[] encoded;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    encoded = createX509Cert(
+      createKeyPair(), Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS)
+    ).getEncoded();
+  }
+
+  @Benchmark
+  public Certificate create() {
+    return new Certificate(encoded, Certificate.Error.UNKNOWN);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import com.google.inject.util.Providers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sonia.scm.api.v2.resources.ScmPathInfo;
+import sonia.scm.api.v2.resources.ScmPathInfoStore;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Maps a store of 500 rejected certificates, each with one parent, as it is done for every GET of the
+ * certificate list. {@code parseOnly} measures the parsing of the same certificates which {@link CertificateMapper}
+ * had to do on every request before the parsed certificate was kept by {@link Certificate}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateMapperBenchmark {
+
+  private static final int STORE_SIZE = 500;
+
+  private final CertificateMapper mapper = new CertificateMapperImpl();
+  private final List<Certificate> certificates = new ArrayList<>();
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    ScmPathInfoStore scmPathInfoStore = new ScmPathInfoStore();
+    scmPathInfoStore.set((ScmPathInfo) () -> URI.create("api/"));
+    mapper.scmPathInfoStore = Providers.of(scmPathInfoStore);
+    mapper.detailsCache = new CertificateDetailsCache(new SimpleMeterRegistry());
+
+    Subject subject = mock(Subject.class);
+    when(subject.isPermitted(anyString())).thenReturn(true);
+    ThreadContext.bind(subject);
+
+    KeyPair keyPair = createKeyPair();
+    for (int i = 0; i < STORE_SIZE; i++) {
+      X509Certificate parent = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+      X509Certificate leaf = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+      certificates.add(new Certificate(
+        new Certificate(parent.getEncoded(), Certificate.Error.UNKNOWN),
+        leaf.getEncoded(),
+        Certificate.Error.UNKNOWN
+      ));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    ThreadContext.unbindSubject();
+  }
+
+  @Benchmark
+  public List<CertificateDto> map() {
+    List<CertificateDto> dtos = new ArrayList<>(certificates.size());
+    for (Certificate certificate : certificates) {
+      dtos.add(mapper.map(certificate));
+    }
+    return dtos;
+  }
+
+  @Benchmark
+  public List<X509Certificate> parseOnly() throws GeneralSecurityException {
+    List<X509Certificate> parsed = new ArrayList<>(certificates.size() * 2);
+    for (Certificate certificate : certificates) {
+      Certificate current = certificate;
+      while (current != null) {
+        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        parsed.add((X509Certificate) factory.generateCertificate(new ByteArrayInputStream(current.getEncoded())));
+        current = current.getParent();
+      }
+    }
+    return parsed;
+  }
+}
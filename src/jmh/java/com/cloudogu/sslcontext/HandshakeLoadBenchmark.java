@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import sonia.scm.store.InMemoryDataStoreFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createCipherHandler;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyStore;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+
+/**
+ * Complete TLS handshakes with the {@link SSLContext} of the plugin against a local {@link EchoServer}, whose
+ * certificate is trusted by the platform, trusted by the stored certificates, expired or unknown. Without
+ * {@code resumable} every handshake verifies the chain of the server again, because the sessions are invalidated,
+ * with {@code resumable} the sessions are kept in the client session cache and accepted chains are resumed.
+ * <p>
+ * {@code handshake} runs the clients on the benchmark threads and reports handshakes per second and the latency
+ * percentiles, the gc profiler adds the allocation per handshake ({@code gc.alloc.rate.norm}), which contains the
+ * allocations of the server as well. {@code virtualThreads} starts {@value #CLIENTS} concurrent handshakes per
+ * invocation, on virtual threads if the jvm supports them and on platform threads otherwise.
+ * <p>
+ * The platform trust managers are replaced by one which trusts a generated certificate, because the certificates
+ * of the jvm can not be used for generated chains.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HandshakeLoadBenchmark {
+
+  static final int CLIENTS = 64;
+
+  private static final char[] PASSWORD = "secret".toCharArray();
+
+  @Param({"platform", "stored", "expired", "unknown"})
+  private String chain;
+
+  @Param({"false", "true"})
+  private boolean resumable;
+
+  private EchoServer server;
+  private SSLContext context;
+  private ExecutorService clients;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException, IOException {
+    Instant now = Instant.now();
+    KeyPair platformKeyPair = createKeyPair();
+    X509Certificate platformCertificate = createX509Cert(platformKeyPair, now.minus(1, ChronoUnit.DAYS), now.plus(1, ChronoUnit.DAYS));
+    KeyPair storedKeyPair = createKeyPair();
+    X509Certificate storedCertificate = createX509Cert(storedKeyPair, now.minus(1, ChronoUnit.DAYS), now.plus(1, ChronoUnit.DAYS));
+
+    KeyStore platformKeyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    platformKeyStore.load(null, null);
+    platformKeyStore.setCertificateEntry("platform", platformCertificate);
+    List<X509TrustManager> platformTrustManagers = TrustManagerChain.createTrustManagers(platformKeyStore);
+
+    TrustedCertificatesStore trustedCertificatesStore = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), new SimpleMeterRegistry());
+    trustedCertificatesStore.add(new Certificate(storedCertificate.getEncoded(), Certificate.Error.UNKNOWN));
+    CertificateStore store = new CertificateStore(
+      new InMemoryDataStoreFactory(), new InMemoryBlobStoreFactory(), trustedCertificatesStore, new SimpleMeterRegistry()
+    );
+    TrustManagerChain trustManagerChain = new TrustManagerChain(trustedCertificatesStore, new PlatformTrustManagers(new SimpleMeterRegistry()) {
+      @Override
+      List<X509TrustManager> get() {
+        return platformTrustManagers;
+      }
+    }, new SimpleMeterRegistry());
+    // the collector is never flushed, rejected chains stay in memory and are coalesced by their fingerprint
+    RejectedCertificateCollector collector = new RejectedCertificateCollector(
+      store, new SimpleMeterRegistry(), RejectedCertificateCollector.CAPACITY
+    );
+    context = new SSLContextProvider(
+      new CapturingTrustManager(collector, trustManagerChain, new SimpleMeterRegistry()),
+      new ClientIdentityKeyManager(new ClientIdentityStore(new InMemoryBlobStoreFactory(), createCipherHandler())),
+      trustedCertificatesStore,
+      new SimpleMeterRegistry()
+    ).get();
+
+    server = new EchoServer();
+    server.start(serverKeyStore(platformKeyPair, platformCertificate, storedKeyPair, storedCertificate, now), PASSWORD);
+    clients = createClients();
+  }
+
+  private KeyStore serverKeyStore(KeyPair platformKeyPair, X509Certificate platformCertificate,
+                                  KeyPair storedKeyPair, X509Certificate storedCertificate, Instant now) throws GeneralSecurityException, IOException {
+    if ("platform".equals(chain)) {
+      return createKeyStore(platformKeyPair, platformCertificate, PASSWORD);
+    } else if ("stored".equals(chain)) {
+      return createKeyStore(storedKeyPair, storedCertificate, PASSWORD);
+    }
+    KeyPair keyPair = createKeyPair();
+    if ("expired".equals(chain)) {
+      return createKeyStore(keyPair, createX509Cert(keyPair, now.minus(2, ChronoUnit.DAYS), now.minus(1, ChronoUnit.DAYS)), PASSWORD);
+    }
+    return createKeyStore(keyPair, createX509Cert(keyPair, now.minus(1, ChronoUnit.DAYS), now.plus(1, ChronoUnit.DAYS)), PASSWORD);
+  }
+
+  private static ExecutorService createClients() {
+    try {
+      // virtual threads are available with java 21 and later
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(CLIENTS);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    clients.shutdownNow();
+    server.close();
+  }
+
+  @Benchmark
+  @Threads(8)
+  @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+  public boolean handshake() {
+    return server.handshake(context, resumable);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OperationsPerInvocation(CLIENTS)
+  public int virtualThreads() throws InterruptedException, ExecutionException {
+    List<Future<Boolean>> handshakes = new ArrayList<>(CLIENTS);
+    for (int i = 0; i < CLIENTS; i++) {
+      handshakes.add(clients.submit(() -> server.handshake(context, resumable)));
+    }
+    int accepted = 0;
+    for (Future<Boolean> handshake : handshakes) {
+      if (handshake.get()) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+}
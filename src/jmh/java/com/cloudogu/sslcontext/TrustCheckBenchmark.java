@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+
+/**
+ * Measures {@link TrustManagerChain#checkServerTrusted(X509Certificate[], String)} for a chain which is trusted by
+ * the platform, a chain which is trusted by the stored certificates and a chain which is rejected by both. Without
+ * {@code cached} the verified chains are forgotten before every check, so that the path validation is measured
+ * instead of the lookup in the {@link VerifiedChainCache}. The platform trust managers are replaced by one which
+ * trusts a generated certificate, because the certificates of the jvm can not be used for generated chains.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrustCheckBenchmark {
+
+  @Param({"platform", "stored", "rejected"})
+  private String outcome;
+
+  @Param({"true", "false"})
+  private boolean cached;
+
+  private TrustManagerChain chain;
+  private X509Certificate[] serverChain;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException, IOException {
+    X509Certificate platformCertificate = createCertificate();
+    X509Certificate storedCertificate = createCertificate();
+    X509Certificate unknownCertificate = createCertificate();
+
+    KeyStore platformKeyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    platformKeyStore.load(null, null);
+    platformKeyStore.setCertificateEntry("platform", platformCertificate);
+    List<X509TrustManager> platformTrustManagers = TrustManagerChain.createTrustManagers(platformKeyStore);
+
+    TrustedCertificatesStore store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), new SimpleMeterRegistry());
+    store.add(new Certificate(storedCertificate.getEncoded(), Certificate.Error.UNKNOWN));
+
+    chain = new TrustManagerChain(store, new PlatformTrustManagers(new SimpleMeterRegistry()) {
+      @Override
+      List<X509TrustManager> get() {
+        return platformTrustManagers;
+      }
+    }, new SimpleMeterRegistry());
+
+    if ("platform".equals(outcome)) {
+      serverChain = new X509Certificate[]{platformCertificate};
+    } else if ("stored".equals(outcome)) {
+      serverChain = new X509Certificate[]{storedCertificate};
+    } else {
+      serverChain = new X509Certificate[]{unknownCertificate};
+    }
+  }
+
+  private static X509Certificate createCertificate() throws GeneralSecurityException {
+    return createX509Cert(createKeyPair(), Instant.now().minus(1, ChronoUnit.MINUTES), Instant.now().plus(1, ChronoUnit.DAYS));
+  }
+
+  @Benchmark
+  public boolean checkServerTrusted() {
+    if (!cached) {
+      chain.getVerifiedChainCache().invalidate();
+    }
+    try {
+      chain.checkServerTrusted(serverChain, "RSA");
+      return true;
+    } catch (CertificateException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+
+/**
+ * Measures {@link TrustedCertificatesStore#add(Certificate)} for trust stores of different sizes. Every add copies
+ * the current key store and writes a journal record, the added certificate is removed again after each invocation
+ * outside of the measurement. Compactions of the journal run in the background as they do in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrustStoreAddBenchmark {
+
+  @Param({"10", "1000", "10000"})
+  private int entries;
+
+  private TrustedCertificatesStore store;
+  private Certificate certificate;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    KeyPair keyPair = createKeyPair();
+    Instant start = Instant.now();
+    List<Certificate> certificates = new ArrayList<>(entries);
+    for (int i = 0; i < entries; i++) {
+      // different validity periods lead to different certificates with the same key
+      certificates.add(new Certificate(
+        createX509Cert(keyPair, start.minusSeconds(i), start.plus(1, ChronoUnit.DAYS)).getEncoded(),
+        Certificate.Error.UNKNOWN
+      ));
+    }
+    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), new SimpleMeterRegistry());
+    store.batch(transaction -> certificates.forEach(transaction::add));
+
+    certificate = new Certificate(
+      createX509Cert(keyPair, start.plusSeconds(1), start.plus(1, ChronoUnit.DAYS)).getEncoded(),
+      Certificate.Error.UNKNOWN
+    );
+  }
+
+  @TearDown(Level.Invocation)
+  public void removeAdded() {
+    store.remove(certificate);
+  }
+
+  @Benchmark
+  public void add() {
+    store.add(certificate);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+
+/**
+ * Measures how long loading the trusted certificates takes on startup, for the JKS and PKCS12 key stores written
+ * by older versions and for the snapshots without password protection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrustStoreLoadBenchmark {
+
+  private static final char[] PASSWORD = "password".toCharArray();
+
+  @Param({"1000", "10000"})
+  private int entries;
+
+  @Param({"jks", "pkcs12", "snapshot"})
+  private String format;
+
+  private InMemoryBlobStore blobStore;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException, IOException {
+    KeyPair keyPair = createKeyPair();
+    Instant start = Instant.now();
+    KeyStore keyStore = KeyStore.getInstance("snapshot".equals(format) ? TrustStoreJournal.KEY_STORE_TYPE : format.toUpperCase(Locale.ENGLISH));
+    keyStore.load(null, PASSWORD);
+    for (int i = 0; i < entries; i++) {
+      // different validity periods lead to different certificates with the same key
+      Certificate certificate = new Certificate(
+        createX509Cert(keyPair, start.minusSeconds(i), start.plus(1, ChronoUnit.DAYS)).getEncoded(),
+        Certificate.Error.UNKNOWN
+      );
+      keyStore.setCertificateEntry(certificate.getFingerprint(), certificate.toX509());
+    }
+
+    blobStore = new InMemoryBlobStore();
+    if ("snapshot".equals(format)) {
+      TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+      journal.load();
+      journal.compact(keyStore);
+    } else {
+      try (OutputStream os = blobStore.create(TrustStoreJournal.LEGACY_SNAPSHOT).getOutputStream()) {
+        keyStore.store(os, PASSWORD);
+      }
+    }
+  }
+
+  @Benchmark
+  public KeyStore load() throws GeneralSecurityException, IOException {
+    return new TrustStoreJournal(blobStore, PASSWORD).load();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import sonia.scm.store.DataStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Write-through cache in front of a data store of certificate entries. All entries are read once, when the cache
+ * is created, and every change is written to the store and to the cache, so that reads do not have to read and
+ * unmarshal the stored entries again. If the store contains more entries than the configured maximum, the least
+ * recently used entries are evicted; missing entries are read from the store afterwards.
+ */
+class CachedEntryStore {
+
+  private final DataStore<CertificateEntry> store;
+  private final Cache<String, CertificateEntry> cache;
+
+  // true as long as the cache contains every entry of the store
+  private volatile boolean complete;
+
+  CachedEntryStore(DataStore<CertificateEntry> store, long maxSize) {
+    this.store = store;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      // a single segment evicts only if the maximum is reached
+      .concurrencyLevel(1)
+      .<String, CertificateEntry>removalListener(notification -> {
+        if (notification.wasEvicted()) {
+          complete = false;
+        }
+      })
+      .build();
+    this.complete = true;
+    cache.putAll(store.getAll());
+  }
+
+  CertificateEntry get(String id) {
+    CertificateEntry entry = cache.getIfPresent(id);
+    if (entry == null && !complete) {
+      return load(id);
+    }
+    return entry;
+  }
+
+  // synchronized with the changes, so that an entry which is removed concurrently is not cached again
+  private synchronized CertificateEntry load(String id) {
+    CertificateEntry entry = store.get(id);
+    if (entry != null) {
+      cache.put(id, entry);
+    }
+    return entry;
+  }
+
+  Collection<CertificateEntry> getAll() {
+    if (complete) {
+      return new ArrayList<>(cache.asMap().values());
+    }
+    return store.getAll().values();
+  }
+
+  synchronized void put(String id, CertificateEntry entry) {
+    store.put(id, entry);
+    cache.put(id, entry);
+  }
+
+  synchronized void remove(String id) {
+    store.remove(id);
+    cache.invalidate(id);
+  }
+
+  boolean isComplete() {
+    return complete;
+  }
+}
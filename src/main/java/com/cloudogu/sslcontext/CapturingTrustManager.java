@@ -16,15 +16,19 @@
 
 package com.cloudogu.sslcontext;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import javax.net.ssl.X509TrustManager;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.CertificateRevokedException;
 import java.security.cert.X509Certificate;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
 
 import static com.cloudogu.sslcontext.Certificate.Error.EXPIRED;
 import static com.cloudogu.sslcontext.Certificate.Error.NOT_YET_VALID;
@@ -34,12 +38,19 @@ import static com.cloudogu.sslcontext.Certificate.Error.UNKNOWN;
 public class CapturingTrustManager implements X509TrustManager {
 
   private final X509TrustManager delegate;
-  private final CertificateStore store;
+  private final RejectedCertificateCollector collector;
+  private final Map<Certificate.Error, Counter> rejections = new EnumMap<>(Certificate.Error.class);
 
   @Inject
-  public CapturingTrustManager(CertificateStore store, @Named("chain") X509TrustManager delegate) {
-    this.store = store;
+  public CapturingTrustManager(RejectedCertificateCollector collector, @Named("chain") X509TrustManager delegate, MeterRegistry meterRegistry) {
+    this.collector = collector;
     this.delegate = delegate;
+    for (Certificate.Error error : Certificate.Error.values()) {
+      rejections.put(error, Counter.builder("sslcontext.trust.rejections")
+        .description("Rejected certificate chains by the reason of the rejection")
+        .tag("error", error.name().toLowerCase(Locale.ENGLISH))
+        .register(meterRegistry));
+    }
   }
 
   @Override
@@ -47,7 +58,7 @@ public class CapturingTrustManager implements X509TrustManager {
     try {
       delegate.checkClientTrusted(x509Certificates, s);
     } catch (CertificateException ex) {
-      storeRejectedCerts(x509Certificates, error(ex));
+      reject(x509Certificates, ex);
       throw ex;
     }
   }
@@ -57,11 +68,17 @@ public class CapturingTrustManager implements X509TrustManager {
     try {
       delegate.checkServerTrusted(x509Certificates, s);
     } catch (CertificateException ex) {
-      storeRejectedCerts(x509Certificates, error(ex));
+      reject(x509Certificates, ex);
       throw ex;
     }
   }
 
+  private void reject(X509Certificate[] x509Certificates, CertificateException ex) {
+    Certificate.Error error = error(ex);
+    rejections.get(error).increment();
+    collector.capture(x509Certificates, error);
+  }
+
   private Certificate.Error error(Throwable ex) {
     if (ex instanceof CertificateExpiredException) {
       return EXPIRED;
@@ -81,17 +98,4 @@ public class CapturingTrustManager implements X509TrustManager {
   public X509Certificate[] getAcceptedIssuers() {
     return delegate.getAcceptedIssuers();
   }
-
-  private void storeRejectedCerts(X509Certificate[] x509Certificates, Certificate.Error error) throws CertificateEncodingException {
-    Certificate mainCertificate = wrapNestedCerts(x509Certificates, error);
-    store.put(mainCertificate);
-  }
-
-  private Certificate wrapNestedCerts(X509Certificate[] x509Certificates, Certificate.Error error) throws CertificateEncodingException {
-    Certificate certificate = null;
-    for (int i = x509Certificates.length - 1; i >= 0; i--) {
-      certificate = new Certificate(certificate, x509Certificates[i].getEncoded(), error);
-    }
-    return certificate;
-  }
 }
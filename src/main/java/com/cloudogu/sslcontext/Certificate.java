@@ -17,6 +17,7 @@
 package com.cloudogu.sslcontext;
 
 import com.google.common.hash.Hashing;
+import lombok.AccessLevel;
 import lombok.Getter;
 import sonia.scm.xml.XmlInstantAdapter;
 
@@ -24,6 +25,7 @@ import javax.annotation.Nullable;
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.XmlTransient;
 import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.io.ByteArrayInputStream;
 import java.security.cert.CertificateException;
@@ -36,6 +38,9 @@ import java.time.Instant;
 @XmlAccessorType(XmlAccessType.FIELD)
 public class Certificate {
 
+  // the X.509 factory of the jdk keeps no state between calls, so all threads share one instance
+  private static final CertificateFactory CERTIFICATE_FACTORY = createCertificateFactory();
+
   @Nullable
   private Certificate parent;
   private byte[] encoded;
@@ -46,6 +51,13 @@ public class Certificate {
   private String fingerprint;
   @XmlJavaTypeAdapter(XmlInstantAdapter.class)
   private Instant timestamp;
+  private long occurrences;
+  @XmlJavaTypeAdapter(XmlInstantAdapter.class)
+  private Instant lastSeen;
+
+  @XmlTransient
+  @Getter(AccessLevel.NONE)
+  private transient volatile X509Certificate x509;
 
   private Certificate() {}
 
@@ -60,10 +72,29 @@ public class Certificate {
     this.fingerprint = createFingerprint(encoded);
     this.status = Status.REJECTED;
     this.timestamp = Instant.now();
+    this.occurrences = 1;
+    this.lastSeen = timestamp;
+  }
+
+  /**
+   * Restores a stored certificate without computing the fingerprint again.
+   */
+  @SuppressWarnings("java:S107") // all fields of the stored certificate
+  Certificate(@Nullable Certificate parent, byte[] encoded, String fingerprint, Status status, Error error,
+              boolean uploaded, Instant timestamp, long occurrences, Instant lastSeen) {
+    this.parent = parent;
+    this.encoded = encoded;
+    this.fingerprint = fingerprint;
+    this.status = status;
+    this.error = error;
+    this.uploaded = uploaded;
+    this.timestamp = timestamp;
+    this.occurrences = occurrences;
+    this.lastSeen = lastSeen;
   }
 
   @SuppressWarnings({"deprecated", "UnstableApiUsage", "java:S1874"})
-  private String createFingerprint(byte[] certificate) {
+  static String createFingerprint(byte[] certificate) {
     return Hashing.sha1().hashBytes(certificate).toString();
   }
 
@@ -89,9 +120,34 @@ public class Certificate {
     this.uploaded = true;
   }
 
+  void setOccurrences(long occurrences, Instant lastSeen) {
+    this.occurrences = occurrences;
+    this.lastSeen = lastSeen;
+  }
+
+  void addOccurrences(long occurrences) {
+    this.occurrences += occurrences;
+  }
+
+  private static CertificateFactory createCertificateFactory() {
+    try {
+      return CertificateFactory.getInstance("X.509");
+    } catch (CertificateException e) {
+      throw new IllegalStateException("X.509 certificate factory is not available", e);
+    }
+  }
+
+  /**
+   * Returns the parsed certificate. The encoded bytes are parsed only on the first call, the result is kept for
+   * the lifetime of this object and is not persisted.
+   */
   public X509Certificate toX509() throws CertificateException {
-    CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-    return (X509Certificate) certFactory.generateCertificate(new ByteArrayInputStream(encoded));
+    X509Certificate certificate = x509;
+    if (certificate == null) {
+      certificate = (X509Certificate) CERTIFICATE_FACTORY.generateCertificate(new ByteArrayInputStream(encoded));
+      x509 = certificate;
+    }
+    return certificate;
   }
 
   enum Status {
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads one or more certificates from an uploaded file. Supported are PEM files with any number of certificate or
+ * PKCS#7 blocks, where other blocks like private keys are skipped, as well as a sequence of DER encoded certificates
+ * or a DER encoded PKCS#7 structure. The file is parsed from the stream block by block. Only a single block is held
+ * in memory, which may not be larger than the certificates it can contain within the limits of
+ * {@value #CERTIFICATE_LIMIT_BYTES} bytes per certificate and {@value #MAX_CERTIFICATES} certificates per file.
+ */
+class CertificateBundleReader {
+
+  static final int CERTIFICATE_LIMIT_BYTES = 50000;
+  static final int MAX_CERTIFICATES = 1000;
+
+  private static final int SEQUENCE = 0x30;
+  private static final int OBJECT_IDENTIFIER = 0x06;
+  private static final String BEGIN = "-----BEGIN ";
+  private static final String END = "-----END ";
+  private static final String DASHES = "-----";
+
+  private final int certificateLimit;
+  private final int maxCertificates;
+
+  CertificateBundleReader() {
+    this(CERTIFICATE_LIMIT_BYTES, MAX_CERTIFICATES);
+  }
+
+  CertificateBundleReader(int certificateLimit, int maxCertificates) {
+    this.certificateLimit = certificateLimit;
+    this.maxCertificates = maxCertificates;
+  }
+
+  /**
+   * Returns all certificates of the given stream.
+   *
+   * @throws CertificateException if the stream is no supported certificate format, contains no certificate, an
+   *                              invalid or too large certificate or too many certificates
+   */
+  List<Certificate> read(InputStream input) throws IOException, CertificateException {
+    BufferedInputStream buffered = new BufferedInputStream(input);
+    buffered.mark(1);
+    int first = buffered.read();
+    buffered.reset();
+    CertificateFactory factory = CertificateFactory.getInstance("X.509");
+    List<Certificate> certificates = new ArrayList<>();
+    if (first == SEQUENCE) {
+      readDer(factory, buffered, certificates);
+    } else {
+      readPem(factory, new BufferedReader(new InputStreamReader(buffered, StandardCharsets.US_ASCII)), certificates);
+    }
+    if (certificates.isEmpty()) {
+      throw new CertificateException("File contains no certificate");
+    }
+    return certificates;
+  }
+
+  private void readDer(CertificateFactory factory, InputStream input, List<Certificate> certificates) throws IOException, CertificateException {
+    int tag;
+    while ((tag = input.read()) >= 0) {
+      if (tag != SEQUENCE) {
+        throw invalid();
+      }
+      if (certificates.size() >= maxCertificates) {
+        throw tooMany();
+      }
+      ByteArrayOutputStream element = new ByteArrayOutputStream();
+      element.write(tag);
+      long length = readLength(input, element);
+      int contentTag = length > 0 ? input.read() : -1;
+      if (contentTag < 0) {
+        throw invalid();
+      }
+      // a certificate starts with the sequence of its content, a pkcs#7 structure with the identifier of its type
+      long limit = contentTag == OBJECT_IDENTIFIER ? remainingBytes(certificates) : certificateLimit;
+      if (element.size() + length > limit) {
+        throw contentTag == OBJECT_IDENTIFIER ? tooLargeBundle() : tooLarge();
+      }
+      element.write(contentTag);
+      byte[] content = input.readNBytes((int) length - 1);
+      if (content.length < length - 1) {
+        throw invalid();
+      }
+      element.write(content);
+      add(certificates, generateCertificates(factory, element.toByteArray()));
+    }
+  }
+
+  private static long readLength(InputStream input, ByteArrayOutputStream element) throws IOException, CertificateException {
+    int first = input.read();
+    if (first < 0) {
+      throw invalid();
+    }
+    element.write(first);
+    if ((first & 0x80) == 0) {
+      return first;
+    }
+    int bytes = first & 0x7F;
+    if (bytes == 0 || bytes > 4) {
+      throw invalid();
+    }
+    long length = 0;
+    for (int i = 0; i < bytes; i++) {
+      int next = input.read();
+      if (next < 0) {
+        throw invalid();
+      }
+      element.write(next);
+      length = (length << 8) | next;
+    }
+    return length;
+  }
+
+  private void readPem(CertificateFactory factory, Reader reader, List<Certificate> certificates) throws IOException, CertificateException {
+    // text around the blocks may be as long as the encoding of a single certificate
+    int lineLimit = base64Length(certificateLimit);
+    String line;
+    while ((line = readLine(reader, lineLimit)) != null) {
+      if (line.startsWith(BEGIN) && line.endsWith(DASHES) && line.length() > BEGIN.length() + DASHES.length()) {
+        String type = line.substring(BEGIN.length(), line.length() - DASHES.length());
+        if (type.equals("PKCS7") || type.equals("CMS")) {
+          byte[] block = readBlock(reader, type, remainingBytes(certificates), lineLimit);
+          if (block == null) {
+            throw tooLargeBundle();
+          }
+          add(certificates, generateCertificates(factory, block));
+        } else if (type.endsWith("CERTIFICATE")) {
+          if (certificates.size() >= maxCertificates) {
+            throw tooMany();
+          }
+          // trusted certificates of openssl carry additional data after the certificate, which is ignored
+          byte[] block = readBlock(reader, type, 2L * certificateLimit, lineLimit);
+          if (block == null) {
+            throw tooLarge();
+          }
+          add(certificates, List.of(generateCertificate(factory, block)));
+        } else {
+          skipBlock(reader, type, lineLimit);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the decoded content of the block or {@code null}, if the content is larger than the given limit.
+   */
+  private static byte[] readBlock(Reader reader, String type, long limit, int lineLimit) throws IOException, CertificateException {
+    String end = END + type + DASHES;
+    long charLimit = base64Length(limit);
+    StringBuilder base64 = new StringBuilder();
+    String line;
+    while ((line = readLine(reader, lineLimit)) != null) {
+      if (line.equals(end)) {
+        try {
+          return Base64.getMimeDecoder().decode(base64.toString());
+        } catch (IllegalArgumentException e) {
+          throw new CertificateException("File is not a valid certificate", e);
+        }
+      }
+      if (base64.length() + line.length() > charLimit) {
+        return null;
+      }
+      base64.append(line);
+    }
+    throw invalid();
+  }
+
+  private static void skipBlock(Reader reader, String type, int lineLimit) throws IOException, CertificateException {
+    String end = END + type + DASHES;
+    String line;
+    while ((line = readLine(reader, lineLimit)) != null) {
+      if (line.equals(end)) {
+        return;
+      }
+    }
+    throw invalid();
+  }
+
+  /**
+   * Reads the next line without its line break or returns {@code null} at the end of the stream.
+   */
+  private static String readLine(Reader reader, int limit) throws IOException, CertificateException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = reader.read()) >= 0) {
+      if (c == '\n') {
+        return line.toString();
+      }
+      if (c != '\r') {
+        if (line.length() >= limit) {
+          throw invalid();
+        }
+        line.append((char) c);
+      }
+    }
+    return line.length() > 0 ? line.toString() : null;
+  }
+
+  private long remainingBytes(List<Certificate> certificates) {
+    return (long) certificateLimit * (maxCertificates - certificates.size());
+  }
+
+  private static int base64Length(long bytes) {
+    return (int) Math.min(Integer.MAX_VALUE, (bytes + 2) / 3 * 4);
+  }
+
+  private static CertificateException invalid() {
+    return new CertificateException("File is not a valid certificate");
+  }
+
+  private CertificateException tooLarge() {
+    return new CertificateException("Certificate is larger than " + certificateLimit + " bytes");
+  }
+
+  private CertificateException tooMany() {
+    return new CertificateException("File contains more than " + maxCertificates + " certificates");
+  }
+
+  private CertificateException tooLargeBundle() {
+    return new CertificateException(
+      "File contains more than " + maxCertificates + " certificates or a certificate larger than " + certificateLimit + " bytes"
+    );
+  }
+
+  private static Collection<? extends java.security.cert.Certificate> generateCertificates(CertificateFactory factory, byte[] content) throws CertificateException {
+    try {
+      return factory.generateCertificates(new ByteArrayInputStream(content));
+    } catch (CertificateException e) {
+      throw new CertificateException("File is not a valid certificate", e);
+    }
+  }
+
+  private static java.security.cert.Certificate generateCertificate(CertificateFactory factory, byte[] content) throws CertificateException {
+    try {
+      return factory.generateCertificate(new ByteArrayInputStream(content));
+    } catch (CertificateException e) {
+      throw new CertificateException("File is not a valid certificate", e);
+    }
+  }
+
+  private void add(List<Certificate> certificates, Collection<? extends java.security.cert.Certificate> parsed) throws CertificateException {
+    for (java.security.cert.Certificate certificate : parsed) {
+      byte[] encoded = certificate.getEncoded();
+      if (encoded.length > certificateLimit) {
+        throw tooLarge();
+      }
+      if (certificates.size() >= maxCertificates) {
+        throw tooMany();
+      }
+      certificates.add(new Certificate(encoded, Certificate.Error.UNKNOWN));
+    }
+  }
+}
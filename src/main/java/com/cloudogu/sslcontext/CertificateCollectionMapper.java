@@ -18,6 +18,7 @@ package com.cloudogu.sslcontext;
 
 import de.otto.edison.hal.Embedded;
 import de.otto.edison.hal.HalRepresentation;
+import de.otto.edison.hal.Links;
 import sonia.scm.api.v2.resources.LinkBuilder;
 import sonia.scm.api.v2.resources.ScmPathInfoStore;
 
@@ -27,6 +28,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static de.otto.edison.hal.Link.link;
 import static de.otto.edison.hal.Links.linkingTo;
 
 public class CertificateCollectionMapper {
@@ -45,6 +47,29 @@ public class CertificateCollectionMapper {
     return new HalRepresentation(linkingTo().self(selfLink(status)).build(), Embedded.embedded("chain", dtos));
   }
 
+  public HalRepresentation map(CertificatePage page, Certificate.Status status, CertificateQuery query) {
+    List<CertificateDto> dtos = page.getCertificates().stream().map(mapper::map).collect(Collectors.toList());
+    String self = selfLink(status);
+    Links.Builder links = linkingTo().self(self + query.toQueryString(page.getPage()));
+    if (query.isPaged()) {
+      links.single(link("first", self + query.toQueryString(0)));
+      if (page.getPage() > 0) {
+        links.single(link("prev", self + query.toQueryString(page.getPage() - 1)));
+      }
+      if (page.getPage() + 1 < page.getPageTotal()) {
+        links.single(link("next", self + query.toQueryString(page.getPage() + 1)));
+      }
+      if (page.getPageTotal() > 0) {
+        links.single(link("last", self + query.toQueryString(page.getPageTotal() - 1)));
+      }
+    }
+    CertificateCollectionDto dto = new CertificateCollectionDto(links.build(), Embedded.embedded("chain", dtos));
+    dto.setPage(page.getPage());
+    dto.setPageTotal(page.getPageTotal());
+    dto.setTotal(page.getTotal());
+    return dto;
+  }
+
   private String selfLink(Certificate.Status status) {
     return new LinkBuilder(scmPathInfoStore.get().get(), SSLContextResource.class)
       .method(resolveLinkMethodName(status))
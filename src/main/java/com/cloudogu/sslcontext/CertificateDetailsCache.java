@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the fields of the certificate dto which are derived from the X509 certificate. They depend only on the
+ * encoded certificate, which is identified by the fingerprint, so the entries never have to be invalidated when
+ * the status of a certificate changes. Status and links are added by the {@link CertificateMapper} per request.
+ * <p>
+ * The details of the chain are cached by the fingerprint of the certificate as well, so that a chain is resolved
+ * with a single lookup. Because a certificate may be stored with another chain later on, a cached chain is only
+ * used if the fingerprints of its certificates still match.
+ */
+@Singleton
+class CertificateDetailsCache {
+
+  static final long MAX_SIZE = 10000;
+
+  private final Cache<String, Details> cache;
+  private final Cache<String, Chain> chains;
+
+  @Inject
+  CertificateDetailsCache(MeterRegistry meterRegistry) {
+    this(meterRegistry, MAX_SIZE);
+  }
+
+  CertificateDetailsCache(MeterRegistry meterRegistry, long maxSize) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .recordStats()
+      .build();
+    this.chains = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .recordStats()
+      .build();
+    GuavaCacheMetrics.monitor(meterRegistry, cache, "sslcontext.certificate.details");
+    GuavaCacheMetrics.monitor(meterRegistry, chains, "sslcontext.certificate.chains");
+  }
+
+  Details get(Certificate certificate) throws CertificateException {
+    try {
+      return cache.get(certificate.getFingerprint(), () -> new Details(certificate.getFingerprint(), certificate.toX509()));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof CertificateException) {
+        throw (CertificateException) e.getCause();
+      }
+      throw new IllegalStateException("Could not read details of certificate " + certificate.getFingerprint(), e);
+    }
+  }
+
+  /**
+   * Returns the details of the parents of the certificate, starting with the direct parent.
+   */
+  List<Details> getChain(Certificate certificate) throws CertificateException {
+    Chain chain = chains.getIfPresent(certificate.getFingerprint());
+    if (chain == null || !chain.matches(certificate)) {
+      chain = new Chain(resolveChain(certificate));
+      chains.put(certificate.getFingerprint(), chain);
+    }
+    return chain.details;
+  }
+
+  private List<Details> resolveChain(Certificate certificate) throws CertificateException {
+    List<Details> details = new ArrayList<>();
+    Certificate parent = certificate.getParent();
+    while (parent != null) {
+      details.add(get(parent));
+      parent = parent.getParent();
+    }
+    return Collections.unmodifiableList(details);
+  }
+
+  long size() {
+    return cache.size();
+  }
+
+  private static final class Chain {
+
+    private final List<Details> details;
+
+    private Chain(List<Details> details) {
+      this.details = details;
+    }
+
+    private boolean matches(Certificate certificate) {
+      Certificate parent = certificate.getParent();
+      for (Details parentDetails : details) {
+        if (parent == null || !parent.getFingerprint().equals(parentDetails.getFingerprint())) {
+          return false;
+        }
+        parent = parent.getParent();
+      }
+      return parent == null;
+    }
+  }
+
+  static final class Details {
+
+    private final String fingerprint;
+    private final String subjectDN;
+    private final String issuerDN;
+    private final Instant notBefore;
+    private final Instant notAfter;
+    private final String signAlg;
+
+    @SuppressWarnings("java:S1874") // the dto has always used the deprecated names
+    private Details(String fingerprint, X509Certificate certificate) {
+      this.fingerprint = fingerprint;
+      this.subjectDN = certificate.getSubjectDN().getName();
+      this.issuerDN = certificate.getIssuerDN().getName();
+      this.notBefore = certificate.getNotBefore().toInstant();
+      this.notAfter = certificate.getNotAfter().toInstant();
+      this.signAlg = certificate.getSigAlgName();
+    }
+
+    String getFingerprint() {
+      return fingerprint;
+    }
+
+    String getSubjectDN() {
+      return subjectDN;
+    }
+
+    String getIssuerDN() {
+      return issuerDN;
+    }
+
+    Instant getNotBefore() {
+      return notBefore;
+    }
+
+    Instant getNotAfter() {
+      return notAfter;
+    }
+
+    String getSignAlg() {
+      return signAlg;
+    }
+  }
+}
@@ -40,6 +40,8 @@ public class CertificateDto extends HalRepresentation {
   private Certificate.Status status;
   private Certificate.Error error;
   private Instant timestamp;
+  private long occurrences;
+  private Instant lastSeen;
 
   public CertificateDto(Links links, Embedded embedded) {
     super(links, embedded);
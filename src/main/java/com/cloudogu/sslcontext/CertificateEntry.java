@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import sonia.scm.xml.XmlInstantAdapter;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlElementWrapper;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Stored form of a {@link Certificate} and its chain. The encoded certificates are not part of the entry, they are
+ * stored once per fingerprint and are referenced by the entry, so that intermediate certificates which are part of
+ * many chains are stored only once. Certificates of the chain are always restored as rejected certificates with
+ * the error of the entry, as they were captured.
+ */
+@XmlRootElement(name = "certificate-entry")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CertificateEntry {
+
+  private String fingerprint;
+  @XmlElementWrapper(name = "chain")
+  @XmlElement(name = "fingerprint")
+  private List<String> chain = new ArrayList<>();
+
+  private Certificate.Status status;
+  private Certificate.Error error;
+  private boolean uploaded;
+  @XmlJavaTypeAdapter(XmlInstantAdapter.class)
+  private Instant timestamp;
+  private long occurrences;
+  @XmlJavaTypeAdapter(XmlInstantAdapter.class)
+  private Instant lastSeen;
+
+  CertificateEntry() {
+  }
+
+  CertificateEntry(Certificate certificate) {
+    this.fingerprint = certificate.getFingerprint();
+    for (Certificate parent = certificate.getParent(); parent != null; parent = parent.getParent()) {
+      chain.add(parent.getFingerprint());
+    }
+    this.status = certificate.getStatus();
+    this.error = certificate.getError();
+    this.uploaded = certificate.isUploaded();
+    this.timestamp = certificate.getTimestamp();
+    this.occurrences = certificate.getOccurrences();
+    this.lastSeen = certificate.getLastSeen();
+  }
+
+  String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Returns the fingerprints of the certificate and of all certificates of its chain.
+   */
+  List<String> getFingerprints() {
+    List<String> fingerprints = new ArrayList<>(chain.size() + 1);
+    fingerprints.add(fingerprint);
+    fingerprints.addAll(chain);
+    return fingerprints;
+  }
+
+  long getOccurrences() {
+    return occurrences;
+  }
+
+  /**
+   * Restores the certificate with its chain. The encoded certificates are resolved by their fingerprint, if one of
+   * them could not be resolved the chain ends before it and if the certificate itself could not be resolved,
+   * {@code null} is returned.
+   */
+  Certificate toCertificate(Function<String, byte[]> contents) {
+    List<byte[]> encoded = new ArrayList<>();
+    for (String id : getFingerprints()) {
+      byte[] content = contents.apply(id);
+      if (content == null) {
+        break;
+      }
+      encoded.add(content);
+    }
+    if (encoded.isEmpty()) {
+      return null;
+    }
+    Certificate parent = null;
+    for (int i = encoded.size() - 1; i > 0; i--) {
+      parent = new Certificate(
+        parent, encoded.get(i), chain.get(i - 1), Certificate.Status.REJECTED, error, false, timestamp, 1, timestamp
+      );
+    }
+    return new Certificate(parent, encoded.get(0), fingerprint, status, error, uploaded, timestamp, occurrences, lastSeen);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * In memory index of the fields which can be used to filter and order certificate listings, so that a page can
+ * be selected without restoring and mapping every stored certificate. The index is built from the store on the
+ * first query and is kept up to date by the {@link CertificateStore} afterwards.
+ */
+class CertificateIndex {
+
+  private final Supplier<Collection<Certificate>> loader;
+  private Map<String, Entry> entries;
+
+  CertificateIndex(Supplier<Collection<Certificate>> loader) {
+    this.loader = loader;
+  }
+
+  synchronized void put(Certificate certificate) {
+    if (entries != null) {
+      entries.put(certificate.getFingerprint(), new Entry(certificate));
+    }
+  }
+
+  synchronized void remove(String fingerprint) {
+    if (entries != null) {
+      entries.remove(fingerprint);
+    }
+  }
+
+  /**
+   * Returns the fingerprints of all certificates which match the filter of the query, in the order of the query.
+   */
+  List<String> find(CertificateQuery query) {
+    return snapshot().stream()
+      .filter(entry -> matches(entry, query))
+      .sorted(comparator(query))
+      .map(entry -> entry.fingerprint)
+      .collect(Collectors.toList());
+  }
+
+  private synchronized List<Entry> snapshot() {
+    if (entries == null) {
+      entries = new HashMap<>();
+      for (Certificate certificate : loader.get()) {
+        entries.put(certificate.getFingerprint(), new Entry(certificate));
+      }
+    }
+    return new ArrayList<>(entries.values());
+  }
+
+  private static boolean matches(Entry entry, CertificateQuery query) {
+    return query.getError().map(error -> error == entry.error).orElse(true)
+      && query.getUploaded().map(uploaded -> uploaded == entry.uploaded).orElse(true)
+      && query.getSearch().map(search -> contains(entry.subject, search) || contains(entry.issuer, search)).orElse(true);
+  }
+
+  private static boolean contains(String value, String search) {
+    return value != null && value.toLowerCase(Locale.ENGLISH).contains(search);
+  }
+
+  private static Comparator<Entry> comparator(CertificateQuery query) {
+    Comparator<Entry> comparator;
+    switch (query.getSortBy()) {
+      case NOT_AFTER:
+        comparator = comparing(entry -> entry.notAfter, query.isDesc());
+        break;
+      case SUBJECT:
+        comparator = comparing(entry -> entry.subject, query.isDesc());
+        break;
+      default:
+        comparator = comparing(entry -> entry.timestamp, query.isDesc());
+    }
+    // the fingerprint keeps the order stable across pages
+    return comparator.thenComparing(entry -> entry.fingerprint);
+  }
+
+  private static <T extends Comparable<? super T>> Comparator<Entry> comparing(Function<Entry, T> key, boolean desc) {
+    Comparator<T> order = desc ? Comparator.reverseOrder() : Comparator.naturalOrder();
+    return Comparator.comparing(key, Comparator.nullsLast(order));
+  }
+
+  private static final class Entry {
+
+    private final String fingerprint;
+    private final Certificate.Error error;
+    private final boolean uploaded;
+    private final Instant timestamp;
+    private final Instant notAfter;
+    private final String subject;
+    private final String issuer;
+
+    @SuppressWarnings("java:S1874") // the dto uses the deprecated names too
+    private Entry(Certificate certificate) {
+      this.fingerprint = certificate.getFingerprint();
+      this.error = certificate.getError();
+      this.uploaded = certificate.isUploaded();
+      this.timestamp = certificate.getTimestamp();
+
+      // same representation as in the certificate dto, so that the search matches what is shown
+      X509Certificate x509 = parse(certificate);
+      this.notAfter = x509 != null ? x509.getNotAfter().toInstant() : null;
+      this.subject = x509 != null ? x509.getSubjectDN().getName() : null;
+      this.issuer = x509 != null ? x509.getIssuerDN().getName() : null;
+    }
+
+    private static X509Certificate parse(Certificate certificate) {
+      try {
+        return certificate.toX509();
+      } catch (CertificateException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -28,7 +28,6 @@ import sonia.scm.api.v2.resources.ScmPathInfoStore;
 import jakarta.inject.Inject;
 import jakarta.inject.Provider;
 import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,6 +41,9 @@ public abstract class CertificateMapper extends BaseMapper<Certificate, Certific
   @Inject
   Provider<ScmPathInfoStore> scmPathInfoStore;
 
+  @Inject
+  CertificateDetailsCache detailsCache;
+
   @Mapping(target = "subjectDN", ignore = true)
   @Mapping(target = "signAlg", ignore = true)
   @Mapping(target = "notBefore", ignore = true)
@@ -66,38 +68,48 @@ public abstract class CertificateMapper extends BaseMapper<Certificate, Certific
   }
 
   private List<CertificateDto> mapChainCerts(Certificate certificate) {
-    List<CertificateDto> chainCerts = new ArrayList<>();
+    List<CertificateDetailsCache.Details> chainDetails = resolveChain(certificate);
+    List<CertificateDto> chainCerts = new ArrayList<>(chainDetails.size());
 
     Certificate chainCert = certificate.getParent();
-    while (chainCert != null) {
+    for (CertificateDetailsCache.Details details : chainDetails) {
       CertificateDto chainCertDto = new CertificateDto(createLinks(chainCert, certificate.getFingerprint()), emptyEmbedded());
       chainCertDto.setParent(certificate.getFingerprint());
       chainCertDto.setStatus(certificate.getStatus());
       chainCertDto.setError(certificate.getError());
       chainCertDto.setTimestamp(certificate.getTimestamp());
-      setCertFieldsToDto(chainCert, chainCertDto);
+      setDetailsToDto(details, chainCertDto);
       chainCerts.add(chainCertDto);
       chainCert = chainCert.getParent();
     }
     return chainCerts;
   }
 
-  private void setCertFieldsToDto(Certificate certificate, CertificateDto dto) {
+  private List<CertificateDetailsCache.Details> resolveChain(Certificate certificate) {
     try {
-      X509Certificate x509Certificate = certificate.toX509();
-
-      dto.setFingerprint(certificate.getFingerprint());
-      dto.setIssuerDN(x509Certificate.getIssuerDN().getName());
-      dto.setSubjectDN(x509Certificate.getSubjectDN().getName());
-      dto.setNotAfter(x509Certificate.getNotAfter().toInstant());
-      dto.setNotBefore(x509Certificate.getNotBefore().toInstant());
-      dto.setSignAlg(x509Certificate.getSigAlgName());
+      return detailsCache.getChain(certificate);
+    } catch (CertificateException ex) {
+      throw new IllegalStateException("Could not resolve stored certificate", ex);
+    }
+  }
 
+  private void setCertFieldsToDto(Certificate certificate, CertificateDto dto) {
+    try {
+      setDetailsToDto(detailsCache.get(certificate), dto);
     } catch (CertificateException ex) {
       throw new IllegalStateException("Could not resolve stored certificate", ex);
     }
   }
 
+  private void setDetailsToDto(CertificateDetailsCache.Details details, CertificateDto dto) {
+    dto.setFingerprint(details.getFingerprint());
+    dto.setIssuerDN(details.getIssuerDN());
+    dto.setSubjectDN(details.getSubjectDN());
+    dto.setNotAfter(details.getNotAfter());
+    dto.setNotBefore(details.getNotBefore());
+    dto.setSignAlg(details.getSignAlg());
+  }
+
   private Links createLinks(Certificate certificate, String storedId) {
     Links.Builder linksBuilder = linkingTo();
     if (PermissionChecker.mayManageSSLContext()) {
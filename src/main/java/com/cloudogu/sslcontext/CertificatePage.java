@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * One page of certificates which matched a {@link CertificateQuery}.
+ */
+final class CertificatePage {
+
+  private final List<Certificate> certificates;
+  private final int page;
+  private final int pageTotal;
+  private final int total;
+
+  CertificatePage(List<Certificate> certificates, int page, int pageTotal, int total) {
+    this.certificates = ImmutableList.copyOf(certificates);
+    this.page = page;
+    this.pageTotal = pageTotal;
+    this.total = total;
+  }
+
+  List<Certificate> getCertificates() {
+    return certificates;
+  }
+
+  int getPage() {
+    return page;
+  }
+
+  int getPageTotal() {
+    return pageTotal;
+  }
+
+  int getTotal() {
+    return total;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Filter, order and page of a certificate listing. A page size of zero returns all matching certificates.
+ */
+final class CertificateQuery {
+
+  static final CertificateQuery ALL = new CertificateQuery(null, null, null, SortBy.TIMESTAMP, true, 0, 0);
+
+  private final Certificate.Error error;
+  private final Boolean uploaded;
+  private final String search;
+  private final SortBy sortBy;
+  private final boolean desc;
+  private final int page;
+  private final int pageSize;
+
+  @SuppressWarnings("java:S107") // one argument per query parameter
+  CertificateQuery(Certificate.Error error, Boolean uploaded, String search, SortBy sortBy, boolean desc, int page, int pageSize) {
+    this.error = error;
+    this.uploaded = uploaded;
+    this.search = search != null && !search.isEmpty() ? search.toLowerCase(Locale.ENGLISH) : null;
+    this.sortBy = sortBy;
+    this.desc = desc;
+    this.page = page;
+    this.pageSize = pageSize;
+  }
+
+  Optional<Certificate.Error> getError() {
+    return Optional.ofNullable(error);
+  }
+
+  Optional<Boolean> getUploaded() {
+    return Optional.ofNullable(uploaded);
+  }
+
+  /**
+   * Returns the lower case text which has to be part of the subject or the issuer.
+   */
+  Optional<String> getSearch() {
+    return Optional.ofNullable(search);
+  }
+
+  SortBy getSortBy() {
+    return sortBy;
+  }
+
+  boolean isDesc() {
+    return desc;
+  }
+
+  int getPage() {
+    return page;
+  }
+
+  int getPageSize() {
+    return pageSize;
+  }
+
+  boolean isPaged() {
+    return pageSize > 0;
+  }
+
+  /**
+   * Returns the query parameters which lead to the given page of this query, or an empty string if all parameters
+   * have their default value.
+   */
+  String toQueryString(int targetPage) {
+    StringBuilder query = new StringBuilder();
+    if (isPaged()) {
+      append(query, "page", String.valueOf(targetPage));
+      append(query, "pageSize", String.valueOf(pageSize));
+    }
+    if (sortBy != SortBy.TIMESTAMP) {
+      append(query, "sortBy", sortBy.getParameter());
+    }
+    if (!desc) {
+      append(query, "desc", "false");
+    }
+    if (error != null) {
+      append(query, "error", error.name());
+    }
+    if (uploaded != null) {
+      append(query, "uploaded", uploaded.toString());
+    }
+    if (search != null) {
+      append(query, "q", URLEncoder.encode(search, StandardCharsets.UTF_8));
+    }
+    return query.toString();
+  }
+
+  private static void append(StringBuilder query, String name, String value) {
+    query.append(query.length() == 0 ? '?' : '&').append(name).append('=').append(value);
+  }
+
+  enum SortBy {
+    TIMESTAMP("timestamp"),
+    NOT_AFTER("notAfter"),
+    SUBJECT("subject");
+
+    private final String parameter;
+
+    SortBy(String parameter) {
+      this.parameter = parameter;
+    }
+
+    String getParameter() {
+      return parameter;
+    }
+
+    static Optional<SortBy> fromParameter(String parameter) {
+      for (SortBy sortBy : values()) {
+        if (sortBy.parameter.equalsIgnoreCase(parameter)) {
+          return Optional.of(sortBy);
+        }
+      }
+      return Optional.empty();
+    }
+  }
+}
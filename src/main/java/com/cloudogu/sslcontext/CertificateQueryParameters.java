@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.QueryParam;
+import java.util.Locale;
+import java.util.Optional;
+
+import static sonia.scm.ScmConstraintViolationException.Builder.doThrow;
+
+/**
+ * Query parameters of the certificate listings.
+ */
+public class CertificateQueryParameters {
+
+  @QueryParam("page")
+  @DefaultValue("0")
+  private int page;
+
+  @QueryParam("pageSize")
+  @DefaultValue("0")
+  private int pageSize;
+
+  @QueryParam("sortBy")
+  @DefaultValue("timestamp")
+  private String sortBy;
+
+  @QueryParam("desc")
+  @DefaultValue("true")
+  private boolean desc;
+
+  @QueryParam("error")
+  private String error;
+
+  @QueryParam("uploaded")
+  private Boolean uploaded;
+
+  @QueryParam("q")
+  private String search;
+
+  CertificateQuery toQuery() {
+    doThrow().violation("page must not be negative", "page").when(page < 0);
+    doThrow().violation("page size must not be negative", "pageSize").when(pageSize < 0);
+    Optional<CertificateQuery.SortBy> order = CertificateQuery.SortBy.fromParameter(sortBy);
+    doThrow().violation("sortBy must be one of timestamp, notAfter or subject", "sortBy").when(!order.isPresent());
+    return new CertificateQuery(parseError(), uploaded, search, order.get(), desc, page, pageSize);
+  }
+
+  private Certificate.Error parseError() {
+    if (error == null || error.isEmpty()) {
+      return null;
+    }
+    for (Certificate.Error value : Certificate.Error.values()) {
+      if (value.name().equals(error.toUpperCase(Locale.ENGLISH))) {
+        return value;
+      }
+    }
+    doThrow().violation("unknown certificate error", "error").when(true);
+    return null;
+  }
+}
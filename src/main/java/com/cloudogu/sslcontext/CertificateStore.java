@@ -13,91 +13,527 @@
  * You should have received a copy of the GNU Affero General Public License
  * along with this program. If not, see https://www.gnu.org/licenses/.
  */
-
 package com.cloudogu.sslcontext;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
-import sonia.scm.store.DataStore;
+import com.google.common.io.ByteStreams;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.store.Blob;
+import sonia.scm.store.BlobStore;
+import sonia.scm.store.BlobStoreFactory;
 import sonia.scm.store.DataStoreFactory;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Stores rejected and approved certificates. Every certificate is stored only once by its fingerprint, the
+ * rejected and approved entries reference their certificate and its chain by fingerprint (see
+ * {@link CertificateEntry}). Certificates which are no longer referenced by any entry are removed.
+ * <p>
+ * The entries of both stores are read once and are kept in memory (see {@link CachedEntryStore}), the maximum
+ * number of cached entries can be configured with the system property {@value #CACHE_SIZE_PROPERTY}.
+ */
 @Singleton
 public class CertificateStore {
 
-  private static final String REJECTED_STORE_NAME = "rejected-certificates";
-  private static final String APPROVED_STORE_NAME = "approved-certificates";
+  private static final Logger LOG = LoggerFactory.getLogger(CertificateStore.class);
+
+  static final String LEGACY_REJECTED_STORE_NAME = "rejected-certificates";
+  static final String LEGACY_APPROVED_STORE_NAME = "approved-certificates";
+
+  private static final String REJECTED_STORE_NAME = "rejected-chains";
+  private static final String APPROVED_STORE_NAME = "approved-chains";
+  private static final String CONTENT_STORE_NAME = "certificates";
+
+  static final String CACHE_SIZE_PROPERTY = "sslcontext.store.cache-size";
+  static final int DEFAULT_CACHE_SIZE = 10000;
 
-  private final DataStore<Certificate> rejectedCertStore;
-  private final DataStore<Certificate> approvedCertStore;
+  private final CachedEntryStore rejectedCertStore;
+  private final CachedEntryStore approvedCertStore;
+  private final BlobStore contentStore;
   private final TrustedCertificatesStore trustedCertificatesStore;
+  private final CertificateIndex rejectedIndex;
+  private final CertificateIndex approvedIndex;
+  private final ChainIndex chainIndex;
+  private final AtomicLong rejectedVersion = new AtomicLong();
+  private final AtomicLong approvedVersion = new AtomicLong();
+  private final TrustedCertificatesStore.Transaction directTrust = new TrustedCertificatesStore.Transaction() {
+    @Override
+    public void add(Certificate certificate) {
+      trustedCertificatesStore.add(certificate);
+    }
+
+    @Override
+    public void remove(Certificate certificate) {
+      trustedCertificatesStore.remove(certificate);
+    }
+  };
+
+  // collects the certificates of removed entries while a batch is applied, to look for unreferenced ones only once
+  private Set<String> deferredCleanup;
+
+  // stored certificates never change, so they can be kept once they were read
+  private final Cache<String, byte[]> contents;
 
   @Inject
-  public CertificateStore(DataStoreFactory dataStoreFactory, TrustedCertificatesStore trustedCertificatesStore) {
-    this.rejectedCertStore = dataStoreFactory.withType(Certificate.class).withName(REJECTED_STORE_NAME).build();
-    this.approvedCertStore = dataStoreFactory.withType(Certificate.class).withName(APPROVED_STORE_NAME).build();
+  public CertificateStore(DataStoreFactory dataStoreFactory, BlobStoreFactory blobStoreFactory, TrustedCertificatesStore trustedCertificatesStore, MeterRegistry meterRegistry) {
+    this(dataStoreFactory, blobStoreFactory, trustedCertificatesStore, meterRegistry, Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+  }
+
+  /**
+   * @param cacheSize maximum number of entries per store and of certificate contents, which are kept in memory
+   */
+  CertificateStore(DataStoreFactory dataStoreFactory, BlobStoreFactory blobStoreFactory, TrustedCertificatesStore trustedCertificatesStore, MeterRegistry meterRegistry, int cacheSize) {
+    this.rejectedCertStore = new CachedEntryStore(
+      dataStoreFactory.withType(CertificateEntry.class).withName(REJECTED_STORE_NAME).build(), cacheSize
+    );
+    this.approvedCertStore = new CachedEntryStore(
+      dataStoreFactory.withType(CertificateEntry.class).withName(APPROVED_STORE_NAME).build(), cacheSize
+    );
+    this.contents = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    this.contentStore = blobStoreFactory.withName(CONTENT_STORE_NAME).build();
     this.trustedCertificatesStore = trustedCertificatesStore;
+    this.rejectedIndex = new CertificateIndex(() -> restoreAll(rejectedCertStore));
+    this.approvedIndex = new CertificateIndex(() -> restoreAll(approvedCertStore));
+    this.chainIndex = new ChainIndex(status -> store(status).getAll());
+    for (Certificate.Status status : Certificate.Status.values()) {
+      Gauge.builder("sslcontext.certificates", chainIndex, index -> index.size(status))
+        .description("Number of stored certificates")
+        .tag("status", status.name().toLowerCase(Locale.ENGLISH))
+        .register(meterRegistry);
+    }
   }
 
   public List<Certificate> getAllRejected() {
     PermissionChecker.checkReadSSLContext();
-    return ImmutableList.copyOf(rejectedCertStore.getAll().values());
+    return restoreAll(rejectedCertStore);
   }
 
   public List<Certificate> getAllApproved() {
     PermissionChecker.checkReadSSLContext();
-    return ImmutableList.copyOf(approvedCertStore.getAll().values());
+    return restoreAll(approvedCertStore);
+  }
+
+  /**
+   * Returns the version of the rejected certificates, which is increased with every change of them.
+   */
+  public long getRejectedVersion() {
+    PermissionChecker.checkReadSSLContext();
+    return rejectedVersion.get();
+  }
+
+  /**
+   * Returns the version of the approved certificates, which is increased with every change of them.
+   */
+  public long getApprovedVersion() {
+    PermissionChecker.checkReadSSLContext();
+    return approvedVersion.get();
+  }
+
+  public CertificatePage getRejected(CertificateQuery query) {
+    PermissionChecker.checkReadSSLContext();
+    return find(rejectedCertStore, query);
+  }
+
+  public CertificatePage getApproved(CertificateQuery query) {
+    PermissionChecker.checkReadSSLContext();
+    return find(approvedCertStore, query);
+  }
+
+  /**
+   * Selects the page by the index and restores only the certificates of the selected page.
+   */
+  private CertificatePage find(CachedEntryStore store, CertificateQuery query) {
+    List<String> fingerprints = index(store).find(query);
+    int total = fingerprints.size();
+    int pageTotal = query.isPaged() ? (total + query.getPageSize() - 1) / query.getPageSize() : 1;
+    List<Certificate> certificates = restoreEach(store, select(fingerprints, query)).collect(Collectors.toList());
+    return new CertificatePage(certificates, query.getPage(), pageTotal, total);
+  }
+
+  /**
+   * Returns the certificates of the query without collecting them, every certificate is restored from the store
+   * when the stream reaches it.
+   */
+  public Stream<Certificate> streamRejected(CertificateQuery query) {
+    PermissionChecker.checkReadSSLContext();
+    return restoreEach(rejectedCertStore, select(rejectedIndex.find(query), query));
+  }
+
+  /**
+   * Returns the certificates of the query without collecting them, every certificate is restored from the store
+   * when the stream reaches it.
+   */
+  public Stream<Certificate> streamApproved(CertificateQuery query) {
+    PermissionChecker.checkReadSSLContext();
+    return restoreEach(approvedCertStore, select(approvedIndex.find(query), query));
   }
 
-  void put(Certificate certificate) {
-    rejectedCertStore.put(certificate.getFingerprint(), certificate);
+  private static List<String> select(List<String> fingerprints, CertificateQuery query) {
+    if (!query.isPaged()) {
+      return fingerprints;
+    }
+    int total = fingerprints.size();
+    int from = (int) Math.min((long) query.getPage() * query.getPageSize(), total);
+    return fingerprints.subList(from, Math.min(from + query.getPageSize(), total));
+  }
+
+  private Stream<Certificate> restoreEach(CachedEntryStore store, List<String> fingerprints) {
+    return fingerprints.stream()
+      .map(store::get)
+      .filter(Objects::nonNull)
+      .map(this::restore)
+      .filter(Objects::nonNull);
+  }
+
+  private CachedEntryStore store(Certificate.Status status) {
+    return status == Certificate.Status.APPROVED ? approvedCertStore : rejectedCertStore;
+  }
+
+  private Certificate.Status status(CachedEntryStore store) {
+    return store == approvedCertStore ? Certificate.Status.APPROVED : Certificate.Status.REJECTED;
+  }
+
+  private CertificateIndex index(CachedEntryStore store) {
+    return store == approvedCertStore ? approvedIndex : rejectedIndex;
+  }
+
+  private AtomicLong version(CachedEntryStore store) {
+    return store == approvedCertStore ? approvedVersion : rejectedVersion;
+  }
+
+  private List<Certificate> restoreAll(CachedEntryStore store) {
+    ImmutableList.Builder<Certificate> certificates = ImmutableList.builder();
+    for (CertificateEntry entry : store.getAll()) {
+      Certificate certificate = restore(entry);
+      if (certificate != null) {
+        certificates.add(certificate);
+      }
+    }
+    return certificates.build();
+  }
+
+  private Certificate restore(CertificateEntry entry) {
+    Certificate certificate = entry.toCertificate(this::content);
+    if (certificate == null) {
+      LOG.warn("could not find stored certificate {}", entry.getFingerprint());
+    }
+    return certificate;
+  }
+
+  synchronized void put(Certificate certificate) {
+    if (chainIndex.contains(Certificate.Status.REJECTED, certificate.getFingerprint())) {
+      CertificateEntry existing = rejectedCertStore.get(certificate.getFingerprint());
+      if (existing != null) {
+        certificate.addOccurrences(existing.getOccurrences());
+      }
+    }
+    write(rejectedCertStore, certificate);
   }
 
-  public void upload(Certificate certificate) {
+  /**
+   * Returns all rejected and approved entries whose chain contains the certificate with the given fingerprint.
+   */
+  List<ChainIndex.Location> findChains(String fingerprint) {
+    PermissionChecker.checkReadSSLContext();
+    return chainIndex.find(fingerprint);
+  }
+
+  /**
+   * Takes over a certificate of the stores which kept the whole chain inside every entry.
+   */
+  synchronized void migrate(Certificate certificate) {
+    if (certificate.getStatus() == Certificate.Status.APPROVED) {
+      write(approvedCertStore, certificate);
+    } else {
+      write(rejectedCertStore, certificate);
+    }
+  }
+
+  public synchronized void upload(Certificate certificate) {
     PermissionChecker.checkManageSSLContext();
     certificate.setUploaded();
-    approveCertificate(certificate);
+    commit(approval(certificate));
   }
 
-  public void approve(String serverCertFingerprint, String fingerprint) {
-    manageCertificates(serverCertFingerprint, fingerprint, rejectedCertStore, this::approveCertificate);
+  /**
+   * Uploads all given certificates with a single change of the trusted certificates.
+   */
+  public synchronized void upload(Collection<Certificate> certificates) {
+    PermissionChecker.checkManageSSLContext();
+    List<Change> changes = new ArrayList<>();
+    for (Certificate certificate : certificates) {
+      certificate.setUploaded();
+      changes.add(approval(certificate));
+    }
+    commit(changes);
   }
 
-  private void approveCertificate(Certificate certificate) {
-    certificate.approve();
-    approvedCertStore.put(certificate.getFingerprint(), certificate);
-    trustedCertificatesStore.add(certificate);
-    if (rejectedCertStore.get(certificate.getFingerprint()) != null) {
-      rejectedCertStore.remove(certificate.getFingerprint());
+  /**
+   * Approves all given certificates which are not trusted yet, with a single change of the trusted certificates.
+   *
+   * @return number of newly trusted certificates
+   */
+  public synchronized int importTrusted(Collection<Certificate> certificates) {
+    PermissionChecker.checkManageSSLContext();
+    KeyStore trusted = trustedCertificatesStore.getKeyStore();
+    List<Certificate> missing = certificates.stream()
+      .filter(certificate -> !isTrusted(trusted, certificate))
+      .collect(Collectors.toList());
+    if (!missing.isEmpty()) {
+      upload(missing);
+    }
+    return missing.size();
+  }
+
+  private static boolean isTrusted(KeyStore trusted, Certificate certificate) {
+    try {
+      return trusted.containsAlias(certificate.getFingerprint());
+    } catch (KeyStoreException e) {
+      throw new CertificateException("Could not read stored trust store", e);
     }
   }
 
-  public void reject(String serverCertFingerprint, String fingerprint) {
-    manageCertificates(serverCertFingerprint, fingerprint, approvedCertStore, certificate -> {
+  /**
+   * Returns the trusted certificates of the plugin. The returned key store must not be modified.
+   */
+  public KeyStore getTrusted() {
+    PermissionChecker.checkReadSSLContext();
+    return trustedCertificatesStore.getKeyStore();
+  }
+
+  public synchronized void approve(String serverCertFingerprint, String fingerprint) {
+    PermissionChecker.checkManageSSLContext();
+    approval(serverCertFingerprint, fingerprint).ifPresent(this::commit);
+  }
+
+  private Optional<Change> approval(String serverCertFingerprint, String fingerprint) {
+    return resolve(serverCertFingerprint, fingerprint, rejectedCertStore).map(this::approval);
+  }
+
+  private Change approval(Certificate certificate) {
+    certificate.approve();
+    return new Change(trust -> trust.add(certificate), () -> {
+      write(approvedCertStore, certificate);
+      remove(rejectedCertStore, certificate.getFingerprint());
+    });
+  }
+
+  public synchronized void reject(String serverCertFingerprint, String fingerprint) {
+    PermissionChecker.checkManageSSLContext();
+    rejection(serverCertFingerprint, fingerprint).ifPresent(this::commit);
+  }
+
+  private Optional<Change> rejection(String serverCertFingerprint, String fingerprint) {
+    return resolve(serverCertFingerprint, fingerprint, approvedCertStore).map(certificate -> {
       certificate.reject();
-      rejectedCertStore.put(certificate.getFingerprint(), certificate);
-      approvedCertStore.remove(certificate.getFingerprint());
-      trustedCertificatesStore.remove(certificate);
+      return new Change(trust -> trust.remove(certificate), () -> {
+        write(rejectedCertStore, certificate);
+        remove(approvedCertStore, certificate.getFingerprint());
+      });
     });
   }
 
-  public void removeRejected(String id) {
+  public synchronized void removeRejected(String id) {
     PermissionChecker.checkManageSSLContext();
-    rejectedCertStore.remove(id);
+    remove(rejectedCertStore, id);
   }
 
-  private void manageCertificates(String serverCertFingerprint, String fingerprint, DataStore<Certificate> store, Consumer<Certificate> consumer) {
+  /**
+   * Applies all changes of the given consumer with one permission check and one change of the trusted
+   * certificates, so that the trust store is persisted and the trust managers are rebuilt only once. All
+   * operations are resolved against the stored certificates before the batch, before anything is written.
+   * The stored entries are changed only after the trusted certificates were changed successfully.
+   */
+  public synchronized void batch(Consumer<Batch> changes) {
     PermissionChecker.checkManageSSLContext();
-    Certificate certificate = store.get(serverCertFingerprint);
-    while (certificate != null) {
-      if (fingerprint.equals(certificate.getFingerprint())) {
-        consumer.accept(certificate);
-        break;
+    List<Change> resolved = new ArrayList<>();
+    changes.accept(new Batch() {
+      @Override
+      public void approve(String serverCertFingerprint, String fingerprint) {
+        approval(serverCertFingerprint, fingerprint).ifPresent(resolved::add);
       }
+
+      @Override
+      public void reject(String serverCertFingerprint, String fingerprint) {
+        rejection(serverCertFingerprint, fingerprint).ifPresent(resolved::add);
+      }
+
+      @Override
+      public void removeRejected(String id) {
+        resolved.add(new Change(trust -> {}, () -> remove(rejectedCertStore, id)));
+      }
+    });
+    commit(resolved);
+  }
+
+  private void commit(Change change) {
+    change.trust.accept(directTrust);
+    change.write.run();
+  }
+
+  private void commit(List<Change> changes) {
+    if (changes.isEmpty()) {
+      return;
+    }
+    trustedCertificatesStore.batch(trust -> changes.forEach(change -> change.trust.accept(trust)));
+    deferredCleanup = new HashSet<>();
+    try {
+      changes.forEach(change -> change.write.run());
+    } finally {
+      Set<String> removed = deferredCleanup;
+      deferredCleanup = null;
+      if (!removed.isEmpty()) {
+        removeUnreferenced(removed);
+      }
+    }
+  }
+
+  private Optional<Certificate> resolve(String serverCertFingerprint, String fingerprint, CachedEntryStore store) {
+    OptionalInt position = chainIndex.position(status(store), serverCertFingerprint, fingerprint);
+    if (!position.isPresent()) {
+      return Optional.empty();
+    }
+    CertificateEntry entry = store.get(serverCertFingerprint);
+    Certificate certificate = entry != null ? restore(entry) : null;
+    for (int i = 0; i < position.getAsInt() && certificate != null; i++) {
       certificate = certificate.getParent();
     }
+    return Optional.ofNullable(certificate);
+  }
+
+  private void write(CachedEntryStore store, Certificate certificate) {
+    for (Certificate current = certificate; current != null; current = current.getParent()) {
+      writeContent(current);
+    }
+    CertificateEntry previous = chainIndex.contains(status(store), certificate.getFingerprint())
+      ? store.get(certificate.getFingerprint()) : null;
+    CertificateEntry entry = new CertificateEntry(certificate);
+    store.put(certificate.getFingerprint(), entry);
+    chainIndex.put(status(store), entry);
+    index(store).put(certificate);
+    version(store).incrementAndGet();
+    if (previous != null) {
+      // the same certificate may have been stored with another chain before
+      List<String> replaced = previous.getFingerprints();
+      replaced.removeAll(entry.getFingerprints());
+      cleanup(replaced);
+    }
+  }
+
+  private void writeContent(Certificate certificate) {
+    String fingerprint = certificate.getFingerprint();
+    if (contents.getIfPresent(fingerprint) != null || contentStore.getOptional(fingerprint).isPresent()) {
+      return;
+    }
+    Blob blob = contentStore.create(fingerprint);
+    try (OutputStream os = blob.getOutputStream()) {
+      os.write(certificate.getEncoded());
+      blob.commit();
+    } catch (IOException e) {
+      throw new CertificateException("Could not store certificate " + fingerprint, e);
+    }
+    contents.put(fingerprint, certificate.getEncoded());
+  }
+
+  private byte[] content(String fingerprint) {
+    byte[] content = contents.getIfPresent(fingerprint);
+    if (content == null) {
+      content = contentStore.getOptional(fingerprint).map(this::read).orElse(null);
+      if (content != null) {
+        contents.put(fingerprint, content);
+      }
+    }
+    return content;
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private byte[] read(Blob blob) {
+    try (InputStream is = blob.getInputStream()) {
+      return ByteStreams.toByteArray(is);
+    } catch (IOException e) {
+      throw new CertificateException("Could not read stored certificate " + blob.getId(), e);
+    }
+  }
+
+  private void remove(CachedEntryStore store, String id) {
+    List<String> fingerprints = chainIndex.remove(status(store), id);
+    if (!fingerprints.isEmpty()) {
+      store.remove(id);
+      index(store).remove(id);
+      version(store).incrementAndGet();
+      cleanup(fingerprints);
+    }
+  }
+
+  private void cleanup(Collection<String> fingerprints) {
+    if (fingerprints.isEmpty()) {
+      return;
+    }
+    if (deferredCleanup != null) {
+      deferredCleanup.addAll(fingerprints);
+    } else {
+      removeUnreferenced(fingerprints);
+    }
+  }
+
+  private void removeUnreferenced(Collection<String> fingerprints) {
+    for (String fingerprint : new HashSet<>(fingerprints)) {
+      if (!chainIndex.isReferenced(fingerprint)) {
+        contentStore.remove(fingerprint);
+        contents.invalidate(fingerprint);
+      }
+    }
+  }
+
+  /**
+   * A resolved change of a certificate, which is applied to the trusted certificates first and to the stored
+   * entries afterwards.
+   */
+  private static final class Change {
+
+    private final Consumer<TrustedCertificatesStore.Transaction> trust;
+    private final Runnable write;
+
+    private Change(Consumer<TrustedCertificatesStore.Transaction> trust, Runnable write) {
+      this.trust = trust;
+      this.write = write;
+    }
+  }
+
+  /**
+   * Changes of the rejected and approved certificates, which are applied together by {@link #batch(Consumer)}.
+   */
+  public interface Batch {
+
+    void approve(String serverCertFingerprint, String fingerprint);
+
+    void reject(String serverCertFingerprint, String fingerprint);
+
+    void removeRejected(String id);
   }
 }
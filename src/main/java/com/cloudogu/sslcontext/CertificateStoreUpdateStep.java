@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import sonia.scm.migration.UpdateStep;
+import sonia.scm.plugin.Extension;
+import sonia.scm.store.DataStore;
+import sonia.scm.store.DataStoreFactory;
+import sonia.scm.version.Version;
+
+import jakarta.inject.Inject;
+
+/**
+ * Moves the certificates of the stores, which kept the whole chain inside every entry, to the
+ * {@link CertificateStore}, which stores every certificate only once.
+ */
+@Extension
+public class CertificateStoreUpdateStep implements UpdateStep {
+
+  private final DataStoreFactory dataStoreFactory;
+  private final CertificateStore certificateStore;
+
+  @Inject
+  public CertificateStoreUpdateStep(DataStoreFactory dataStoreFactory, CertificateStore certificateStore) {
+    this.dataStoreFactory = dataStoreFactory;
+    this.certificateStore = certificateStore;
+  }
+
+  @Override
+  public void doUpdate() {
+    migrate(CertificateStore.LEGACY_REJECTED_STORE_NAME);
+    migrate(CertificateStore.LEGACY_APPROVED_STORE_NAME);
+  }
+
+  private void migrate(String name) {
+    DataStore<Certificate> legacyStore = dataStoreFactory.withType(Certificate.class).withName(name).build();
+    legacyStore.getAll().values().forEach(certificateStore::migrate);
+    legacyStore.clear();
+  }
+
+  @Override
+  public Version getTargetVersion() {
+    return Version.parse("3.1.0");
+  }
+
+  @Override
+  public String getAffectedDataType() {
+    return "com.cloudogu.sslcontext.certificates";
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes certificates as newline delimited json, one certificate dto per line. Every certificate is mapped and
+ * written as soon as the stream reaches it, so the memory usage does not depend on the number of certificates.
+ */
+public class CertificateStreamWriter {
+
+  private final CertificateMapper mapper;
+  private final ObjectMapper objectMapper;
+
+  @Inject
+  public CertificateStreamWriter(CertificateMapper mapper, ObjectMapper objectMapper) {
+    this.mapper = mapper;
+    this.objectMapper = objectMapper;
+  }
+
+  StreamingOutput write(Stream<Certificate> certificates) {
+    return output -> {
+      try (Stream<Certificate> stream = certificates;
+           SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(output)) {
+        Iterator<Certificate> iterator = stream.iterator();
+        while (iterator.hasNext()) {
+          writer.write(mapper.map(iterator.next()));
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.function.Function;
+
+/**
+ * In memory index of the chains of the rejected and approved entries by the fingerprints of their certificates.
+ * It answers which stored chains contain a certificate and at which position, without reading the stores. The index
+ * is built from the stores on first use and is kept up to date by the {@link CertificateStore} afterwards.
+ */
+class ChainIndex {
+
+  private final Function<Certificate.Status, Collection<CertificateEntry>> loader;
+
+  // stored id of the entry to the fingerprints of its chain, starting with the stored certificate
+  private Map<Certificate.Status, Map<String, List<String>>> chains;
+  private Map<String, List<Location>> locations;
+
+  ChainIndex(Function<Certificate.Status, Collection<CertificateEntry>> loader) {
+    this.loader = loader;
+  }
+
+  synchronized void put(Certificate.Status status, CertificateEntry entry) {
+    if (chains != null) {
+      remove(status, entry.getFingerprint());
+      add(status, entry);
+    }
+  }
+
+  /**
+   * Removes the entry with the given stored id and returns the fingerprints of its chain, or an empty list if
+   * there is no such entry.
+   */
+  synchronized List<String> remove(Certificate.Status status, String storedId) {
+    load();
+    List<String> fingerprints = chains.get(status).remove(storedId);
+    if (fingerprints == null) {
+      return Collections.emptyList();
+    }
+    for (String fingerprint : fingerprints) {
+      List<Location> references = locations.get(fingerprint);
+      references.removeIf(location -> location.status == status && location.storedId.equals(storedId));
+      if (references.isEmpty()) {
+        locations.remove(fingerprint);
+      }
+    }
+    return fingerprints;
+  }
+
+  synchronized boolean contains(Certificate.Status status, String storedId) {
+    load();
+    return chains.get(status).containsKey(storedId);
+  }
+
+  /**
+   * Returns the position of the certificate in the chain of the entry with the given stored id, with zero for the
+   * stored certificate itself.
+   */
+  synchronized OptionalInt position(Certificate.Status status, String storedId, String fingerprint) {
+    load();
+    for (Location location : locations.getOrDefault(fingerprint, Collections.emptyList())) {
+      if (location.status == status && location.storedId.equals(storedId)) {
+        return OptionalInt.of(location.position);
+      }
+    }
+    return OptionalInt.empty();
+  }
+
+  /**
+   * Returns all rejected and approved entries whose chain contains the certificate with the given fingerprint.
+   */
+  synchronized List<Location> find(String fingerprint) {
+    load();
+    return new ArrayList<>(locations.getOrDefault(fingerprint, Collections.emptyList()));
+  }
+
+  /**
+   * Returns the number of stored entries with the given status.
+   */
+  synchronized int size(Certificate.Status status) {
+    load();
+    return chains.get(status).size();
+  }
+
+  synchronized boolean isReferenced(String fingerprint) {
+    load();
+    return locations.containsKey(fingerprint);
+  }
+
+  private void load() {
+    if (chains == null) {
+      chains = new EnumMap<>(Certificate.Status.class);
+      locations = new HashMap<>();
+      for (Certificate.Status status : Certificate.Status.values()) {
+        chains.put(status, new HashMap<>());
+        for (CertificateEntry entry : loader.apply(status)) {
+          add(status, entry);
+        }
+      }
+    }
+  }
+
+  private void add(Certificate.Status status, CertificateEntry entry) {
+    List<String> fingerprints = entry.getFingerprints();
+    chains.get(status).put(entry.getFingerprint(), fingerprints);
+    for (int i = 0; i < fingerprints.size(); i++) {
+      locations.computeIfAbsent(fingerprints.get(i), fingerprint -> new ArrayList<>(1))
+        .add(new Location(status, entry.getFingerprint(), i));
+    }
+  }
+
+  /**
+   * Position of a certificate in the chain of a stored entry.
+   */
+  static final class Location {
+
+    private final Certificate.Status status;
+    private final String storedId;
+    private final int position;
+
+    Location(Certificate.Status status, String storedId, int position) {
+      this.status = status;
+      this.storedId = storedId;
+      this.position = position;
+    }
+
+    Certificate.Status getStatus() {
+      return status;
+    }
+
+    String getStoredId() {
+      return storedId;
+    }
+
+    int getPosition() {
+      return position;
+    }
+  }
+}
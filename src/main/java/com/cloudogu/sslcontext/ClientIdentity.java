@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Private key and certificate chain, which are presented as client certificate to servers with the given host.
+ * The host is either a host name or a wildcard for all direct subdomains of a domain, like {@code *.example.com}.
+ */
+final class ClientIdentity {
+
+  private static final Pattern HOST = Pattern.compile(
+    "(\\*\\.)?[a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?(\\.[a-z0-9]([a-z0-9-]{0,61}[a-z0-9])?)*"
+  );
+
+  private final String host;
+  private final PrivateKey privateKey;
+  private final X509Certificate[] chain;
+  private final String fingerprint;
+
+  ClientIdentity(String host, PrivateKey privateKey, X509Certificate[] chain) throws CertificateException {
+    this.host = host;
+    this.privateKey = privateKey;
+    this.chain = chain.clone();
+    this.fingerprint = Certificate.createFingerprint(chain[0].getEncoded());
+  }
+
+  /**
+   * Creates the identity from the only private key of the given key store.
+   *
+   * @throws CertificateException if the key store contains no or more than one private key, the password of the key
+   *                              is wrong or its chain contains no X.509 certificates
+   */
+  static ClientIdentity of(String host, KeyStore keyStore, char[] password) throws CertificateException {
+    try {
+      List<String> keys = Collections.list(keyStore.aliases());
+      keys.removeIf(alias -> !isKeyEntry(keyStore, alias));
+      if (keys.isEmpty()) {
+        throw new CertificateException("File contains no private key");
+      } else if (keys.size() > 1) {
+        throw new CertificateException("File contains more than one private key");
+      }
+      String alias = keys.get(0);
+      java.security.cert.Certificate[] certificates = keyStore.getCertificateChain(alias);
+      if (certificates == null || certificates.length == 0 || !(keyStore.getKey(alias, password) instanceof PrivateKey)) {
+        throw new CertificateException("File contains no private key with certificate chain");
+      }
+      X509Certificate[] chain = new X509Certificate[certificates.length];
+      for (int i = 0; i < certificates.length; i++) {
+        if (!(certificates[i] instanceof X509Certificate)) {
+          throw new CertificateException("Certificate chain of the private key contains no X.509 certificates");
+        }
+        chain[i] = (X509Certificate) certificates[i];
+      }
+      return new ClientIdentity(host, (PrivateKey) keyStore.getKey(alias, password), chain);
+    } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
+      throw new CertificateException("Private key could not be read, the password of the key may be wrong", e);
+    }
+  }
+
+  private static boolean isKeyEntry(KeyStore keyStore, String alias) {
+    try {
+      return keyStore.isKeyEntry(alias);
+    } catch (KeyStoreException e) {
+      return false;
+    }
+  }
+
+  static String normalize(String host) {
+    return host.trim().toLowerCase(Locale.ENGLISH);
+  }
+
+  static boolean isValidHost(String host) {
+    return host.length() <= 255 && HOST.matcher(host).matches();
+  }
+
+  String getHost() {
+    return host;
+  }
+
+  PrivateKey getPrivateKey() {
+    return privateKey;
+  }
+
+  X509Certificate[] getChain() {
+    return chain.clone();
+  }
+
+  X509Certificate getCertificate() {
+    return chain[0];
+  }
+
+  String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Returns {@code true} if the key has one of the given types and if the chain was issued by one of the given
+   * issuers. Key types may contain the signature algorithm of the certificate after an underscore, like
+   * {@code EC_RSA}, only the key algorithm is compared.
+   */
+  boolean isUsableFor(String[] keyTypes, Principal[] issuers) {
+    return hasKeyType(keyTypes) && isIssuedBy(issuers);
+  }
+
+  private boolean hasKeyType(String[] keyTypes) {
+    if (keyTypes == null) {
+      return false;
+    }
+    for (String keyType : keyTypes) {
+      int separator = keyType.indexOf('_');
+      String algorithm = separator > 0 ? keyType.substring(0, separator) : keyType;
+      if (algorithm.equalsIgnoreCase(privateKey.getAlgorithm())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isIssuedBy(Principal[] issuers) {
+    if (issuers == null || issuers.length == 0) {
+      return true;
+    }
+    List<Principal> accepted = Arrays.asList(issuers);
+    for (X509Certificate certificate : chain) {
+      if (accepted.contains(certificate.getIssuerX500Principal())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedKeyManager;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Optional;
+
+/**
+ * Presents the client identity of the {@link ClientIdentityStore} which matches the host of the server. The alias
+ * of an identity is its host together with the fingerprint of its certificate, so the key material is looked up
+ * again for every handshake and changes of the stored identities apply to the next handshake without a restart.
+ * If an identity is replaced during a handshake, the alias of the old identity resolves to neither the chain nor
+ * the key, so a certificate is never presented with the key of another identity. The ssl context of the plugin is
+ * a client only, so no server aliases are provided.
+ */
+@Singleton
+class ClientIdentityKeyManager extends X509ExtendedKeyManager {
+
+  private static final char ALIAS_SEPARATOR = '/';
+
+  private final ClientIdentityStore store;
+
+  @Inject
+  ClientIdentityKeyManager(ClientIdentityStore store) {
+    this.store = store;
+  }
+
+  @Override
+  public String chooseClientAlias(String[] keyTypes, Principal[] issuers, Socket socket) {
+    return choose(host(socket), keyTypes, issuers);
+  }
+
+  @Override
+  public String chooseEngineClientAlias(String[] keyTypes, Principal[] issuers, SSLEngine engine) {
+    return choose(engine != null ? engine.getPeerHost() : null, keyTypes, issuers);
+  }
+
+  private String choose(String host, String[] keyTypes, Principal[] issuers) {
+    if (host == null) {
+      return null;
+    }
+    return store.select(host)
+      .filter(identity -> identity.isUsableFor(keyTypes, issuers))
+      .map(ClientIdentityKeyManager::alias)
+      .orElse(null);
+  }
+
+  private static String host(Socket socket) {
+    if (socket instanceof SSLSocket) {
+      SSLSession session = ((SSLSocket) socket).getHandshakeSession();
+      if (session != null && session.getPeerHost() != null) {
+        return session.getPeerHost();
+      }
+    }
+    if (socket != null && socket.getRemoteSocketAddress() instanceof InetSocketAddress) {
+      // never resolve the name of the address, that would block the handshake
+      return ((InetSocketAddress) socket.getRemoteSocketAddress()).getHostString();
+    }
+    return null;
+  }
+
+  @Override
+  public String[] getClientAliases(String keyType, Principal[] issuers) {
+    String[] aliases = store.identities().stream()
+      .filter(identity -> identity.isUsableFor(new String[]{keyType}, issuers))
+      .map(ClientIdentityKeyManager::alias)
+      .toArray(String[]::new);
+    return aliases.length > 0 ? aliases : null;
+  }
+
+  @Override
+  public X509Certificate[] getCertificateChain(String alias) {
+    return resolve(alias).map(ClientIdentity::getChain).orElse(null);
+  }
+
+  @Override
+  public PrivateKey getPrivateKey(String alias) {
+    return resolve(alias).map(ClientIdentity::getPrivateKey).orElse(null);
+  }
+
+  static String alias(ClientIdentity identity) {
+    return identity.getHost() + ALIAS_SEPARATOR + identity.getFingerprint();
+  }
+
+  private Optional<ClientIdentity> resolve(String alias) {
+    int separator = alias != null ? alias.lastIndexOf(ALIAS_SEPARATOR) : -1;
+    if (separator < 0) {
+      return Optional.empty();
+    }
+    String fingerprint = alias.substring(separator + 1);
+    return store.get(alias.substring(0, separator))
+      .filter(identity -> identity.getFingerprint().equals(fingerprint));
+  }
+
+  @Override
+  public String[] getServerAliases(String keyType, Principal[] issuers) {
+    return null;
+  }
+
+  @Override
+  public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+    return null;
+  }
+
+  @Override
+  public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+    return null;
+  }
+}
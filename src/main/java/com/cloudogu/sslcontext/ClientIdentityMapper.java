@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import de.otto.edison.hal.Embedded;
+import de.otto.edison.hal.HalRepresentation;
+import de.otto.edison.hal.Links;
+import sonia.scm.api.v2.resources.LinkBuilder;
+import sonia.scm.api.v2.resources.ScmPathInfoStore;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static de.otto.edison.hal.Embedded.emptyEmbedded;
+import static de.otto.edison.hal.Link.link;
+import static de.otto.edison.hal.Links.linkingTo;
+
+public class ClientIdentityMapper {
+
+  private final Provider<ScmPathInfoStore> scmPathInfoStore;
+
+  @Inject
+  public ClientIdentityMapper(Provider<ScmPathInfoStore> scmPathInfoStore) {
+    this.scmPathInfoStore = scmPathInfoStore;
+  }
+
+  public HalRepresentation map(Collection<ClientIdentity> identities) {
+    List<ClientIdentityDto> dtos = identities.stream().map(this::map).collect(Collectors.toList());
+    String self = new LinkBuilder(scmPathInfoStore.get().get(), ClientIdentityResource.class)
+      .method("getAll")
+      .parameters()
+      .href();
+    return new HalRepresentation(linkingTo().self(self).build(), Embedded.embedded("clientIdentities", dtos));
+  }
+
+  public ClientIdentityDto map(ClientIdentity identity) {
+    Links.Builder links = linkingTo();
+    if (PermissionChecker.mayManageSSLContext()) {
+      String href = new LinkBuilder(scmPathInfoStore.get().get(), ClientIdentityResource.class)
+        .method("remove")
+        .parameters(identity.getHost())
+        .href();
+      links.single(link("delete", href));
+    }
+    ClientIdentityDto dto = new ClientIdentityDto(links.build(), emptyEmbedded());
+    X509Certificate certificate = identity.getCertificate();
+    dto.setHost(identity.getHost());
+    dto.setSubjectDN(certificate.getSubjectDN().getName());
+    dto.setIssuerDN(certificate.getIssuerDN().getName());
+    dto.setNotBefore(certificate.getNotBefore().toInstant());
+    dto.setNotAfter(certificate.getNotAfter().toInstant());
+    dto.setKeyAlgorithm(identity.getPrivateKey().getAlgorithm());
+    dto.setFingerprint(identity.getFingerprint());
+    return dto;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import de.otto.edison.hal.HalRepresentation;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import sonia.scm.api.v2.resources.ErrorDto;
+import sonia.scm.web.VndMediaType;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+
+import static sonia.scm.ContextEntry.ContextBuilder.entity;
+import static sonia.scm.NotFoundException.notFound;
+import static sonia.scm.ScmConstraintViolationException.Builder.doThrow;
+
+@Path("v2/ssl-context/client-identities")
+public class ClientIdentityResource {
+
+  private final ClientIdentityStore store;
+  private final ClientIdentityMapper mapper;
+
+  @Inject
+  public ClientIdentityResource(ClientIdentityStore store, ClientIdentityMapper mapper) {
+    this.store = store;
+    this.mapper = mapper;
+  }
+
+  @GET
+  @Path("")
+  @Produces(SSLContextResource.MEDIA_TYPE)
+  @Operation(
+    summary = "Get client identities",
+    description = "Returns the client certificates, which are presented to servers that request a client certificate. Private keys are never returned.",
+    tags = "SSL Context Plugin",
+    operationId = "ssl_context_get_client_identities"
+  )
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = MediaType.APPLICATION_JSON,
+      schema = @Schema(implementation = HalRepresentation.class)
+    )
+  )
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the data")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public HalRepresentation getAll() {
+    return mapper.map(store.getAll());
+  }
+
+  @PUT
+  @Path("{host}")
+  @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+  @Operation(
+    summary = "Stores a client identity",
+    description = "Stores the only private key and its certificate chain of the uploaded PKCS12, JKS or JCEKS key store as client identity for the given host. The password of the key store and the key is passed in the required X-Key-Store-Password header. The host may be a wildcard like *.example.com for all direct subdomains. An existing identity for the host is replaced.",
+    tags = "SSL Context Plugin",
+    operationId = "ssl_context_put_client_identity"
+  )
+  @ApiResponse(responseCode = "204", description = "success")
+  @ApiResponse(responseCode = "400", description = "invalid host, invalid or too large key store, missing or wrong password or not exactly one private key")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to write the data")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response put(@PathParam("host") String host,
+                      @HeaderParam(SSLContextResource.PASSWORD_HEADER) String password,
+                      InputStream is) throws IOException {
+    PermissionChecker.checkManageSSLContext();
+    SSLContextResource.checkPassword(password);
+    String normalized = ClientIdentity.normalize(host);
+    doThrow().violation("host must be a host name or a wildcard like *.example.com", "host")
+      .when(!ClientIdentity.isValidHost(normalized));
+    store.put(readIdentity(normalized, is, password));
+    return Response.noContent().build();
+  }
+
+  private ClientIdentity readIdentity(String host, InputStream is, String password) throws IOException {
+    try {
+      KeyStore keyStore = TrustStoreFile.readKeyStore(is, password.toCharArray());
+      return ClientIdentity.of(host, keyStore, password.toCharArray());
+    } catch (CertificateException e) {
+      doThrow().violation(e.getMessage()).when(true);
+    }
+    return null;
+  }
+
+  @DELETE
+  @Path("{host}")
+  @Operation(
+    summary = "Removes a client identity",
+    description = "Removes the client identity of the given host",
+    tags = "SSL Context Plugin",
+    operationId = "ssl_context_remove_client_identity"
+  )
+  @ApiResponse(responseCode = "204", description = "success")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to write the data")
+  @ApiResponse(
+    responseCode = "404",
+    description = "not found, there is no client identity for the host",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response remove(@PathParam("host") String host) {
+    String normalized = ClientIdentity.normalize(host);
+    if (!store.remove(normalized)) {
+      throw notFound(entity(ClientIdentity.class, normalized));
+    }
+    return Response.noContent().build();
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.security.CipherHandler;
+import sonia.scm.store.Blob;
+import sonia.scm.store.BlobStore;
+import sonia.scm.store.BlobStoreFactory;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores the client identities, which are presented to servers that request a client certificate. Every identity
+ * is stored as PKCS12 key store in its own blob, next to the trusted certificates. The identities are read once and
+ * are kept in memory, so that the {@link ClientIdentityKeyManager} never has to decrypt a key store during a
+ * handshake. The key stores are encrypted with the {@link CipherHandler} of SCM-Manager, so that the private keys
+ * can only be read with the secret key of this server.
+ */
+@Singleton
+class ClientIdentityStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClientIdentityStore.class);
+
+  private static final String STORE_NAME = "client-identities";
+  private static final String KEY_STORE_TYPE = "PKCS12";
+  // the whole key store is encrypted, its own password only satisfies the key store format
+  private static final char[] PASSWORD = "password".toCharArray();
+
+  private final BlobStore blobStore;
+  private final CipherHandler cipherHandler;
+  private volatile Map<String, ClientIdentity> identities;
+
+  @Inject
+  ClientIdentityStore(BlobStoreFactory storeFactory, CipherHandler cipherHandler) {
+    this.blobStore = storeFactory.withName(STORE_NAME).build();
+    this.cipherHandler = cipherHandler;
+    this.identities = load();
+  }
+
+  private Map<String, ClientIdentity> load() {
+    Map<String, ClientIdentity> loaded = new HashMap<>();
+    for (Blob blob : blobStore.getAll()) {
+      try {
+        ClientIdentity identity = read(blob);
+        loaded.put(identity.getHost(), identity);
+      } catch (IOException | GeneralSecurityException | RuntimeException e) {
+        // a blob which was written with the secret key of another server can not be decrypted as well
+        LOG.warn("could not read client identity {}, skipping it", blob.getId(), e);
+      }
+    }
+    return ImmutableMap.copyOf(loaded);
+  }
+
+  private ClientIdentity read(Blob blob) throws IOException, GeneralSecurityException {
+    String encrypted;
+    try (InputStream input = blob.getInputStream()) {
+      encrypted = new String(ByteStreams.toByteArray(input), StandardCharsets.US_ASCII);
+    }
+    byte[] content = Base64.getDecoder().decode(cipherHandler.decode(encrypted));
+    KeyStore keyStore = KeyStore.getInstance(KEY_STORE_TYPE);
+    keyStore.load(new ByteArrayInputStream(content), PASSWORD);
+    // the alias of the only key entry is the host of the identity
+    return ClientIdentity.of(keyStore.aliases().nextElement(), keyStore, PASSWORD);
+  }
+
+  public List<ClientIdentity> getAll() {
+    PermissionChecker.checkReadSSLContext();
+    List<ClientIdentity> all = new ArrayList<>(identities.values());
+    all.sort(Comparator.comparing(ClientIdentity::getHost));
+    return all;
+  }
+
+  /**
+   * Stores the given identity, an existing identity for the same host is replaced.
+   */
+  public synchronized void put(ClientIdentity identity) {
+    PermissionChecker.checkManageSSLContext();
+    Blob blob = blobStore.getOptional(id(identity.getHost())).orElseGet(() -> blobStore.create(id(identity.getHost())));
+    try {
+      KeyStore keyStore = KeyStore.getInstance(KEY_STORE_TYPE);
+      keyStore.load(null, PASSWORD);
+      keyStore.setKeyEntry(identity.getHost(), identity.getPrivateKey(), PASSWORD, identity.getChain());
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      keyStore.store(content, PASSWORD);
+      String encrypted = cipherHandler.encode(Base64.getEncoder().encodeToString(content.toByteArray()));
+      try (OutputStream output = blob.getOutputStream()) {
+        output.write(encrypted.getBytes(StandardCharsets.US_ASCII));
+      }
+      blob.commit();
+    } catch (IOException | GeneralSecurityException e) {
+      throw new CertificateException("Could not store client identity for " + identity.getHost(), e);
+    }
+    Map<String, ClientIdentity> modified = new HashMap<>(identities);
+    modified.put(identity.getHost(), identity);
+    identities = ImmutableMap.copyOf(modified);
+  }
+
+  /**
+   * Removes the identity of the given host.
+   *
+   * @return {@code false} if there was no identity for the host
+   */
+  public synchronized boolean remove(String host) {
+    PermissionChecker.checkManageSSLContext();
+    if (!identities.containsKey(host)) {
+      return false;
+    }
+    blobStore.remove(id(host));
+    Map<String, ClientIdentity> modified = new HashMap<>(identities);
+    modified.remove(host);
+    identities = ImmutableMap.copyOf(modified);
+    return true;
+  }
+
+  /**
+   * Returns the identity which was stored for exactly the given host or wildcard. The identities are used during
+   * handshakes of any user, so this method does not check permissions.
+   */
+  Optional<ClientIdentity> get(String host) {
+    return Optional.ofNullable(identities.get(host));
+  }
+
+  /**
+   * Returns the identity for connections to the given host, an identity for the host itself is preferred over a
+   * wildcard of its domain. This method does not check permissions.
+   */
+  Optional<ClientIdentity> select(String host) {
+    String normalized = ClientIdentity.normalize(host);
+    ClientIdentity identity = identities.get(normalized);
+    int dot = normalized.indexOf('.');
+    if (identity == null && dot > 0) {
+      identity = identities.get("*" + normalized.substring(dot));
+    }
+    return Optional.ofNullable(identity);
+  }
+
+  /**
+   * Returns all identities without checking permissions.
+   */
+  Collection<ClientIdentity> identities() {
+    return identities.values();
+  }
+
+  private static String id(String host) {
+    // wildcards are not allowed in the names of every store
+    return Hashing.sha256().hashString(host, StandardCharsets.UTF_8).toString();
+  }
+}
@@ -46,9 +46,12 @@ public class IndexLinkEnricher implements HalEnricher {
       HalAppender.LinkArrayBuilder linkArrayBuilder = appender.linkArrayBuilder("sslContext");
       linkArrayBuilder.append("rejected", rejected());
       linkArrayBuilder.append("approved", approved());
+      linkArrayBuilder.append("exportTrustStore", trustStore("exportTrustStore"));
+      linkArrayBuilder.append("clientIdentities", clientIdentities());
 
       if (PermissionChecker.mayManageSSLContext()) {
         linkArrayBuilder.append("upload", upload());
+        linkArrayBuilder.append("importTrustStore", trustStore("importTrustStore"));
       }
       linkArrayBuilder.build();
     }
@@ -59,6 +62,16 @@ public class IndexLinkEnricher implements HalEnricher {
     return linkBuilder.method("uploadCertificate").parameters().href();
   }
 
+  private String trustStore(String method) {
+    LinkBuilder linkBuilder = new LinkBuilder(pathInfoStore.get().get(), SSLContextResource.class);
+    return linkBuilder.method(method).parameters().href();
+  }
+
+  private String clientIdentities() {
+    LinkBuilder linkBuilder = new LinkBuilder(pathInfoStore.get().get(), ClientIdentityResource.class);
+    return linkBuilder.method("getAll").parameters().href();
+  }
+
   private String rejected() {
     LinkBuilder linkBuilder = new LinkBuilder(pathInfoStore.get().get(), SSLContextResource.class);
     return linkBuilder.method("getAllRejected").parameters().href();
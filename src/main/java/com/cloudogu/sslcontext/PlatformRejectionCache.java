@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nullable;
+import java.security.cert.CertificateException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Remembers certificate chains which were rejected by the platform trust managers, together with the reason of
+ * the rejection. Such chains are checked against the stored trust managers only, until the backoff for the chain
+ * is over. Every further rejection by the platform doubles the backoff, up to {@link #MAX_BACKOFF}.
+ */
+class PlatformRejectionCache {
+
+  static final long MAX_SIZE = 1000;
+  static final Duration INITIAL_BACKOFF = Duration.ofMinutes(1);
+  static final Duration MAX_BACKOFF = Duration.ofHours(1);
+
+  private final Cache<String, Rejection> cache;
+  private final Clock clock;
+
+  PlatformRejectionCache() {
+    this(Clock.systemUTC(), MAX_SIZE);
+  }
+
+  PlatformRejectionCache(Clock clock, long maxSize) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .build();
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the exception of the platform trust managers, if the chain was rejected and the backoff is not over.
+   * The exception is shared and must not be thrown as it is, callers should use it as cause of a new one.
+   */
+  @Nullable
+  CertificateException getRejection(String key) {
+    Rejection rejection = cache.getIfPresent(key);
+    if (rejection != null && clock.instant().isBefore(rejection.retryAt)) {
+      return rejection.exception;
+    }
+    return null;
+  }
+
+  void rejected(String key, CertificateException exception) {
+    Instant now = clock.instant();
+    cache.asMap().compute(key, (k, rejection) -> {
+      if (rejection == null) {
+        return new Rejection(INITIAL_BACKOFF, now, exception);
+      }
+      return rejection.next(now, exception);
+    });
+  }
+
+  void accepted(String key) {
+    cache.invalidate(key);
+  }
+
+  private static final class Rejection {
+
+    private final Duration backoff;
+    private final Instant retryAt;
+    private final CertificateException exception;
+
+    private Rejection(Duration backoff, Instant now, CertificateException exception) {
+      this.backoff = backoff;
+      this.retryAt = now.plus(backoff);
+      this.exception = exception;
+    }
+
+    private Rejection next(Instant now, CertificateException exception) {
+      Duration doubled = backoff.multipliedBy(2);
+      return new Rejection(doubled.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : doubled, now, exception);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.base.Suppliers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.X509TrustManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Trust managers of the platform, which are initialized from the default trust store of the jvm (cacerts). The
+ * trust store is parsed once on first access and shared by every consumer of the plugin.
+ */
+@Singleton
+class PlatformTrustManagers {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PlatformTrustManagers.class);
+
+  private final Timer loadTimer;
+  private final Supplier<List<X509TrustManager>> trustManagers;
+
+  @Inject
+  PlatformTrustManagers(MeterRegistry meterRegistry) {
+    this.loadTimer = Timer.builder("sslcontext.platform.load")
+      .description("Time to load the trust managers of the platform")
+      .register(meterRegistry);
+    this.trustManagers = Suppliers.memoize(this::load);
+  }
+
+  List<X509TrustManager> get() {
+    return trustManagers.get();
+  }
+
+  private List<X509TrustManager> load() {
+    long start = System.nanoTime();
+    List<X509TrustManager> platformTrustManagers = TrustManagerChain.createTrustManagers(null);
+    long duration = System.nanoTime() - start;
+    loadTimer.record(duration, TimeUnit.NANOSECONDS);
+    LOG.debug("loaded platform trust managers in {}ms", TimeUnit.NANOSECONDS.toMillis(duration));
+    return platformTrustManagers;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects rejected certificate chains from the handshake threads and writes them to the {@link CertificateStore}
+ * in the background. Captures of the same chain are coalesced by the fingerprint of the server certificate, so
+ * the store sees at most one write per chain and flush interval. If too many distinct chains are pending, further
+ * chains are dropped. The background thread is started and stopped by the {@link SSLContextLifecycle}.
+ */
+@Singleton
+class RejectedCertificateCollector {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RejectedCertificateCollector.class);
+
+  static final int CAPACITY = 1000;
+  static final Duration FLUSH_INTERVAL = Duration.ofSeconds(5);
+
+  private final CertificateStore store;
+  private final int capacity;
+  private final Map<String, Capture> pending = new ConcurrentHashMap<>();
+  private final AtomicInteger reserved = new AtomicInteger();
+
+  private final Counter captured;
+  private final Counter dropped;
+
+  private ScheduledExecutorService executor;
+
+  @Inject
+  RejectedCertificateCollector(CertificateStore store, MeterRegistry meterRegistry) {
+    this(store, meterRegistry, CAPACITY);
+  }
+
+  RejectedCertificateCollector(CertificateStore store, MeterRegistry meterRegistry, int capacity) {
+    this.store = store;
+    this.capacity = capacity;
+    this.captured = Counter.builder("sslcontext.capture.chains")
+      .description("Rejected certificate chains which were queued for the store")
+      .tag("result", "queued")
+      .register(meterRegistry);
+    this.dropped = Counter.builder("sslcontext.capture.chains")
+      .description("Rejected certificate chains which were queued for the store")
+      .tag("result", "dropped")
+      .register(meterRegistry);
+    Gauge.builder("sslcontext.capture.pending", pending, Map::size)
+      .description("Number of distinct rejected certificate chains waiting to be stored")
+      .register(meterRegistry);
+  }
+
+  void capture(X509Certificate[] chain, Certificate.Error error) {
+    String fingerprint;
+    try {
+      fingerprint = Certificate.createFingerprint(chain[0].getEncoded());
+    } catch (CertificateEncodingException e) {
+      LOG.debug("could not encode rejected certificate", e);
+      dropped.increment();
+      return;
+    }
+    Capture capture = new Capture(chain.clone(), error, Instant.now());
+    // the slot of a new chain is reserved within the update of its key, so concurrent captures cannot exceed the capacity
+    Capture queued = pending.compute(fingerprint, (key, existing) -> {
+      if (existing != null) {
+        return existing.merge(capture);
+      }
+      return reserveSlot() ? capture : null;
+    });
+    if (queued == null) {
+      LOG.debug("too many pending rejected certificates, dropping certificate {}", fingerprint);
+      dropped.increment();
+    } else {
+      captured.increment();
+    }
+  }
+
+  private boolean reserveSlot() {
+    return reserved.getAndUpdate(slots -> slots < capacity ? slots + 1 : slots) < capacity;
+  }
+
+  void flush() {
+    for (String fingerprint : pending.keySet()) {
+      Capture capture = pending.remove(fingerprint);
+      if (capture != null) {
+        reserved.decrementAndGet();
+        try {
+          store.put(capture.toCertificate());
+        } catch (Exception e) {
+          LOG.warn("could not store rejected certificate {}", fingerprint, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts the background thread, which flushes the pending chains every {@link #FLUSH_INTERVAL}.
+   */
+  synchronized void start() {
+    if (executor == null) {
+      executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("ssl-context-capture-%d").setDaemon(true).build()
+      );
+      long interval = FLUSH_INTERVAL.toMillis();
+      executor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops the background thread and writes the pending chains.
+   */
+  void close() {
+    ScheduledExecutorService running;
+    synchronized (this) {
+      running = executor;
+      executor = null;
+    }
+    if (running != null) {
+      running.shutdownNow();
+      try {
+        if (!running.awaitTermination(10, TimeUnit.SECONDS)) {
+          LOG.warn("background thread of rejected certificate collector did not terminate");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+
+  long getDroppedCount() {
+    return (long) dropped.count();
+  }
+
+  private static final class Capture {
+
+    private final X509Certificate[] chain;
+    private final Certificate.Error error;
+    private final long occurrences;
+    private final Instant lastSeen;
+
+    private Capture(X509Certificate[] chain, Certificate.Error error, Instant lastSeen) {
+      this(chain, error, 1, lastSeen);
+    }
+
+    private Capture(X509Certificate[] chain, Certificate.Error error, long occurrences, Instant lastSeen) {
+      this.chain = chain;
+      this.error = error;
+      this.occurrences = occurrences;
+      this.lastSeen = lastSeen;
+    }
+
+    private Capture merge(Capture other) {
+      return new Capture(other.chain, other.error, occurrences + other.occurrences, other.lastSeen);
+    }
+
+    private Certificate toCertificate() throws CertificateEncodingException {
+      Certificate certificate = null;
+      for (int i = chain.length - 1; i >= 0; i--) {
+        certificate = new Certificate(certificate, chain[i].getEncoded(), error);
+      }
+      certificate.setOccurrences(occurrences, lastSeen);
+      return certificate;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import jakarta.inject.Inject;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import sonia.scm.plugin.Extension;
+
+/**
+ * Starts the background thread of the {@link RejectedCertificateCollector}. When SCM-Manager is shut down or the
+ * plugins are reloaded, the pending changes are persisted and the background threads are stopped.
+ */
+@Extension
+public class SSLContextLifecycle implements ServletContextListener {
+
+  private final TrustedCertificatesStore trustedCertificatesStore;
+  private final RejectedCertificateCollector rejectedCertificateCollector;
+
+  @Inject
+  public SSLContextLifecycle(TrustedCertificatesStore trustedCertificatesStore, RejectedCertificateCollector rejectedCertificateCollector) {
+    this.trustedCertificatesStore = trustedCertificatesStore;
+    this.rejectedCertificateCollector = rejectedCertificateCollector;
+  }
+
+  @Override
+  public void contextInitialized(ServletContextEvent servletContextEvent) {
+    rejectedCertificateCollector.start();
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent servletContextEvent) {
+    // the collector writes to the certificate store, which in turn changes the trusted certificates
+    rejectedCertificateCollector.close();
+    trustedCertificatesStore.close();
+  }
+}
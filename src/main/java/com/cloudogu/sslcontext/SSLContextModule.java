@@ -33,7 +33,7 @@ public class SSLContextModule extends AbstractModule {
   protected void configure() {
     bind(CertificateMapper.class).to(Mappers.getMapperClass(CertificateMapper.class));
     bind(SSLContext.class).annotatedWith(Names.named("default")).toProvider(SSLContextProvider.class).in(Singleton.class);
-    bind(X509TrustManager.class).annotatedWith(Names.named("chain")).to(TrustManagerChain.class);
+    bind(X509TrustManager.class).annotatedWith(Names.named("chain")).to(TrustManagerChain.class).in(Singleton.class);
     bind(TrustManager.class).annotatedWith(Names.named("default")).to(CapturingTrustManager.class).in(Singleton.class);
   }
 }
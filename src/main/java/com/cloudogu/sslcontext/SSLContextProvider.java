@@ -16,28 +16,93 @@
 
 package com.cloudogu.sslcontext;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.inject.Inject;
 import jakarta.inject.Provider;
+import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.X509TrustManager;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 
+/**
+ * Provides the ssl context of the plugin. The size and the timeout of the client session cache can be configured
+ * with the system properties {@value #SESSION_CACHE_SIZE_PROPERTY} and {@value #SESSION_TIMEOUT_PROPERTY}, otherwise
+ * the defaults of the jvm apply. Connections which resume a cached session skip the verification of the server
+ * certificates, see {@link SessionMetrics} for the number of full handshakes. Whenever the trusted certificates
+ * change, the cached client sessions are invalidated, so that no chain is resumed which would not be trusted anymore.
+ * Servers which request a client certificate receive the matching identity of the {@link ClientIdentityStore}.
+ */
 class SSLContextProvider implements Provider<SSLContext> {
 
+  static final String SESSION_CACHE_SIZE_PROPERTY = "sslcontext.session.cache-size";
+  static final String SESSION_TIMEOUT_PROPERTY = "sslcontext.session.timeout-seconds";
+
   private final CapturingTrustManager capturingSslTrustManager;
+  private final ClientIdentityKeyManager keyManager;
+  private final SessionMetrics sessionMetrics;
+  // the contexts which were handed out, to invalidate their sessions
+  private final Set<SSLContext> contexts = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
 
   @Inject
-  public SSLContextProvider(CapturingTrustManager trustManager) {
+  public SSLContextProvider(CapturingTrustManager trustManager, ClientIdentityKeyManager keyManager,
+                            TrustedCertificatesStore trustedCertificatesStore, MeterRegistry meterRegistry) {
     this.capturingSslTrustManager = trustManager;
+    this.keyManager = keyManager;
+    this.sessionMetrics = new SessionMetrics(meterRegistry);
+    trustedCertificatesStore.onChange(keyStore -> invalidateSessions());
   }
 
   @Override
   public SSLContext get() {
     try {
       SSLContext sslContext = SSLContext.getInstance("TLS");
-      sslContext.init(null, new CapturingTrustManager[]{capturingSslTrustManager}, null);
+      sslContext.init(new KeyManager[]{keyManager}, new X509TrustManager[]{sessionMetrics.counting(capturingSslTrustManager)}, null);
+      configure(sslContext.getClientSessionContext());
+      contexts.add(sslContext);
       return sslContext;
     } catch (GeneralSecurityException e) {
       throw new IllegalStateException();
     }
   }
+
+  private void configure(SSLSessionContext sessionContext) {
+    Integer cacheSize = Integer.getInteger(SESSION_CACHE_SIZE_PROPERTY);
+    if (cacheSize != null) {
+      sessionContext.setSessionCacheSize(cacheSize);
+    }
+    Integer timeout = Integer.getInteger(SESSION_TIMEOUT_PROPERTY);
+    if (timeout != null) {
+      sessionContext.setSessionTimeout(timeout);
+    }
+  }
+
+  /**
+   * Invalidates all cached client sessions, so that the next handshake of every server verifies its chain again.
+   */
+  void invalidateSessions() {
+    List<SSLContext> current;
+    synchronized (contexts) {
+      current = new ArrayList<>(contexts);
+    }
+    for (SSLContext context : current) {
+      SSLSessionContext sessionContext = context.getClientSessionContext();
+      for (byte[] id : Collections.list(sessionContext.getIds())) {
+        SSLSession session = sessionContext.getSession(id);
+        if (session != null) {
+          session.invalidate();
+        }
+      }
+    }
+  }
+
+  SessionMetrics getSessionMetrics() {
+    return sessionMetrics;
+  }
 }
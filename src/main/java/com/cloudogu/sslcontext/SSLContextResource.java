@@ -16,32 +16,44 @@
 
 package com.cloudogu.sslcontext;
 
-import com.google.common.io.ByteStreams;
-import de.otto.edison.hal.HalRepresentation;
+import com.google.common.hash.Hashing;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.apache.commons.io.IOUtils;
 import sonia.scm.api.v2.resources.ErrorDto;
 import sonia.scm.web.VndMediaType;
 
 import jakarta.inject.Inject;
+import jakarta.ws.rs.BeanParam;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
 import java.security.cert.CertificateException;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 
 import static sonia.scm.ScmConstraintViolationException.Builder.doThrow;
 
@@ -52,16 +64,20 @@ import static sonia.scm.ScmConstraintViolationException.Builder.doThrow;
 public class SSLContextResource {
 
   static final String MEDIA_TYPE = VndMediaType.PREFIX + "ssl-context" + VndMediaType.SUFFIX;
-  @SuppressWarnings("java:S115")
-  private static final int UPLOAD_LIMIT_BYTES = 50000;
+  static final String STREAM_MEDIA_TYPE = "application/x-ndjson";
+  static final int BATCH_LIMIT = 1000;
+  static final String PASSWORD_HEADER = "X-Key-Store-Password";
+  private static final String INSTANCE_ID = Long.toHexString(new SecureRandom().nextLong());
 
   private final CertificateStore store;
   private final CertificateCollectionMapper mapper;
+  private final CertificateStreamWriter streamWriter;
 
   @Inject
-  public SSLContextResource(CertificateStore store, CertificateCollectionMapper mapper) {
+  public SSLContextResource(CertificateStore store, CertificateCollectionMapper mapper, CertificateStreamWriter streamWriter) {
     this.store = store;
     this.mapper = mapper;
+    this.streamWriter = streamWriter;
   }
 
   @GET
@@ -69,7 +85,7 @@ public class SSLContextResource {
   @Produces(MEDIA_TYPE)
   @Operation(
     summary = "Get rejected X509 certificate data",
-    description = "Returns data for rejected X509 certificates.",
+    description = "Returns data for rejected X509 certificates. The certificates can be filtered, ordered and paged, without page size all matching certificates are returned.",
     tags = "SSL Context Plugin",
     operationId = "ssl_context_get_rejected_data"
   )
@@ -78,9 +94,11 @@ public class SSLContextResource {
     description = "success",
     content = @Content(
       mediaType = MediaType.APPLICATION_JSON,
-      schema = @Schema(implementation = HalRepresentation.class)
+      schema = @Schema(implementation = CertificateCollectionDto.class)
     )
   )
+  @ApiResponse(responseCode = "304", description = "not modified, the certificates did not change since the given etag")
+  @ApiResponse(responseCode = "400", description = "invalid filter, order or page parameters")
   @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
   @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the data")
   @ApiResponse(
@@ -91,9 +109,54 @@ public class SSLContextResource {
       schema = @Schema(implementation = ErrorDto.class)
     )
   )
-  public Response getAllRejected() {
-    Collection<Certificate> certs = store.getAllRejected();
-    return Response.ok(mapper.map(certs, Certificate.Status.REJECTED)).build();
+  public Response getAllRejected(@Context Request request, @BeanParam CertificateQueryParameters parameters) {
+    CertificateQuery query = parameters.toQuery();
+    EntityTag etag = createEntityTag(store.getRejectedVersion(), "hal", query);
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+    if (notModified != null) {
+      return notModified.build();
+    }
+    CertificatePage page = store.getRejected(query);
+    return Response.ok(mapper.map(page, Certificate.Status.REJECTED, query)).tag(etag).build();
+  }
+
+  @GET
+  @Path("rejected/stream")
+  @Produces(STREAM_MEDIA_TYPE)
+  @Operation(
+    summary = "Stream rejected X509 certificate data",
+    description = "Returns the rejected X509 certificates as newline delimited json, one certificate per line. Accepts the same parameters as the collection of rejected certificates.",
+    tags = "SSL Context Plugin",
+    operationId = "ssl_context_stream_rejected_data"
+  )
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = STREAM_MEDIA_TYPE,
+      schema = @Schema(implementation = CertificateDto.class)
+    )
+  )
+  @ApiResponse(responseCode = "304", description = "not modified, the certificates did not change since the given etag")
+  @ApiResponse(responseCode = "400", description = "invalid filter, order or page parameters")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the data")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response streamRejected(@Context Request request, @BeanParam CertificateQueryParameters parameters) {
+    CertificateQuery query = parameters.toQuery();
+    EntityTag etag = createEntityTag(store.getRejectedVersion(), "stream", query);
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+    if (notModified != null) {
+      return notModified.build();
+    }
+    return Response.ok(streamWriter.write(store.streamRejected(query))).tag(etag).build();
   }
 
   @GET
@@ -101,7 +164,7 @@ public class SSLContextResource {
   @Produces(MEDIA_TYPE)
   @Operation(
     summary = "Get approved X509 certificate data",
-    description = "Returns data for approved X509 certificates.",
+    description = "Returns data for approved X509 certificates. The certificates can be filtered, ordered and paged, without page size all matching certificates are returned.",
     tags = "SSL Context Plugin",
     operationId = "ssl_context_get_approved_data"
   )
@@ -110,9 +173,11 @@ public class SSLContextResource {
     description = "success",
     content = @Content(
       mediaType = MediaType.APPLICATION_JSON,
-      schema = @Schema(implementation = HalRepresentation.class)
+      schema = @Schema(implementation = CertificateCollectionDto.class)
     )
   )
+  @ApiResponse(responseCode = "304", description = "not modified, the certificates did not change since the given etag")
+  @ApiResponse(responseCode = "400", description = "invalid filter, order or page parameters")
   @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
   @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the data")
   @ApiResponse(
@@ -123,9 +188,68 @@ public class SSLContextResource {
       schema = @Schema(implementation = ErrorDto.class)
     )
   )
-  public Response getAllApproved() {
-    Collection<Certificate> certs = store.getAllApproved();
-    return Response.ok(mapper.map(certs, Certificate.Status.APPROVED)).build();
+  public Response getAllApproved(@Context Request request, @BeanParam CertificateQueryParameters parameters) {
+    CertificateQuery query = parameters.toQuery();
+    EntityTag etag = createEntityTag(store.getApprovedVersion(), "hal", query);
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+    if (notModified != null) {
+      return notModified.build();
+    }
+    CertificatePage page = store.getApproved(query);
+    return Response.ok(mapper.map(page, Certificate.Status.APPROVED, query)).tag(etag).build();
+  }
+
+  @GET
+  @Path("approved/stream")
+  @Produces(STREAM_MEDIA_TYPE)
+  @Operation(
+    summary = "Stream approved X509 certificate data",
+    description = "Returns the approved X509 certificates as newline delimited json, one certificate per line. Accepts the same parameters as the collection of approved certificates.",
+    tags = "SSL Context Plugin",
+    operationId = "ssl_context_stream_approved_data"
+  )
+  @ApiResponse(
+    responseCode = "200",
+    description = "success",
+    content = @Content(
+      mediaType = STREAM_MEDIA_TYPE,
+      schema = @Schema(implementation = CertificateDto.class)
+    )
+  )
+  @ApiResponse(responseCode = "304", description = "not modified, the certificates did not change since the given etag")
+  @ApiResponse(responseCode = "400", description = "invalid filter, order or page parameters")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the data")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response streamApproved(@Context Request request, @BeanParam CertificateQueryParameters parameters) {
+    CertificateQuery query = parameters.toQuery();
+    EntityTag etag = createEntityTag(store.getApprovedVersion(), "stream", query);
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+    if (notModified != null) {
+      return notModified.build();
+    }
+    return Response.ok(streamWriter.write(store.streamApproved(query))).tag(etag).build();
+  }
+
+  /**
+   * The representation depends on the version of the certificates, the representation, the query parameters and on
+   * the links the user may see. The instance id distinguishes the versions of different server starts, which all
+   * start at zero.
+   */
+  private EntityTag createEntityTag(long version, String representation, CertificateQuery query) {
+    String links = PermissionChecker.mayManageSSLContext() ? "manage" : "read";
+    String parameters = Hashing.sha256()
+      .hashString(query.toQueryString(query.getPage()), StandardCharsets.UTF_8)
+      .toString()
+      .substring(0, 16);
+    return new EntityTag(INSTANCE_ID + "-" + version + "-" + links + "-" + representation + "-" + parameters);
   }
 
   @POST
@@ -209,12 +333,65 @@ public class SSLContextResource {
     return Response.noContent().build();
   }
 
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Path("batch")
+  @Operation(
+    summary = "Approve, reject and remove several certificates",
+    description = "Applies a list of approve, reject and remove operations at once. Approve and reject require the stored id and the id of the certificate, remove requires the id of the rejected certificate.",
+    tags = "SSL Context Plugin",
+    operationId = "ssl_context_batch"
+  )
+  @ApiResponse(
+    responseCode = "204",
+    description = "success"
+  )
+  @ApiResponse(responseCode = "400", description = "invalid or too many operations")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to write the data")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response batch(CertificateBatchDto batch) {
+    doThrow().violation("batch is required").when(batch == null);
+    List<CertificateBatchDto.OperationDto> operations = batch.getOperations();
+    doThrow().violation("batch has no operations", "operations").when(operations == null || operations.isEmpty());
+    doThrow().violation("batch has too many operations", "operations").when(operations.size() > BATCH_LIMIT);
+    for (CertificateBatchDto.OperationDto operation : operations) {
+      doThrow().violation("operation is required", "operations").when(operation == null);
+      doThrow().violation("operation has no type", "operations", "type").when(operation.getType() == null);
+      doThrow().violation("operation has no id", "operations", "id").when(operation.getId() == null);
+      doThrow().violation("operation has no stored id", "operations", "storedId")
+        .when(operation.getType() != CertificateBatchDto.Type.REMOVE && operation.getStoredId() == null);
+    }
+    store.batch(changes -> operations.forEach(operation -> apply(changes, operation)));
+    return Response.noContent().build();
+  }
+
+  private void apply(CertificateStore.Batch changes, CertificateBatchDto.OperationDto operation) {
+    switch (operation.getType()) {
+      case APPROVE:
+        changes.approve(operation.getStoredId(), operation.getId());
+        break;
+      case REJECT:
+        changes.reject(operation.getStoredId(), operation.getId());
+        break;
+      default:
+        changes.removeRejected(operation.getId());
+    }
+  }
+
   @POST
   @Consumes(MediaType.APPLICATION_OCTET_STREAM)
   @Path("upload")
   @Operation(
-    summary = "Uploads certificate",
-    description = "Uploads a certificate",
+    summary = "Uploads certificates",
+    description = "Uploads one or more certificates, as PEM file with any number of certificates, DER encoded certificates or PKCS#7 file. The file may have at most 1000000 bytes and every certificate at most 50000 bytes.",
     tags = "SSL Context Plugin",
     operationId = "ssl_context_upload_cert"
   )
@@ -222,6 +399,7 @@ public class SSLContextResource {
     responseCode = "204",
     description = "success"
   )
+  @ApiResponse(responseCode = "400", description = "invalid or too large file, too large certificate or too many certificates")
   @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
   @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to write the data")
   @ApiResponse(
@@ -233,26 +411,104 @@ public class SSLContextResource {
     )
   )
   public Response uploadCertificate(InputStream is) throws IOException {
-    Certificate cert = extractCertFromInput(is);
-    store.upload(cert);
+    PermissionChecker.checkManageSSLContext();
+    List<Certificate> certificates = extractCertsFromInput(is);
+    store.upload(certificates);
+    return Response.noContent().build();
+  }
+
+  private List<Certificate> extractCertsFromInput(InputStream is) throws IOException {
+    try {
+      return new CertificateBundleReader().read(is);
+    } catch (CertificateException e) {
+      doThrow().violation(e.getMessage()).when(true);
+    }
+    return Collections.emptyList();
+  }
+
+  @GET
+  @Path("trust-store")
+  @Produces(MediaType.APPLICATION_OCTET_STREAM)
+  @Operation(
+    summary = "Exports trusted certificates",
+    description = "Returns all certificates which are trusted by the plugin as PKCS12 or JKS key store, which is protected by the password of the required X-Key-Store-Password header. The password only protects the integrity of the public certificates.",
+    tags = "SSL Context Plugin",
+    operationId = "ssl_context_export_trust_store"
+  )
+  @ApiResponse(responseCode = "200", description = "success")
+  @ApiResponse(responseCode = "400", description = "unsupported key store format or missing password")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to read the data")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response exportTrustStore(@QueryParam("format") @DefaultValue("pkcs12") String format,
+                                   @HeaderParam(PASSWORD_HEADER) String password) {
+    PermissionChecker.checkReadSSLContext();
+    Optional<TrustStoreFile.Format> fileFormat = TrustStoreFile.Format.parse(format);
+    doThrow().violation("format must be one of pkcs12 or jks", "format").when(!fileFormat.isPresent());
+    checkPassword(password);
+    KeyStore trusted = store.getTrusted();
+    StreamingOutput output = os -> {
+      try {
+        TrustStoreFile.write(trusted, fileFormat.get(), password.toCharArray(), os);
+      } catch (GeneralSecurityException e) {
+        throw new com.cloudogu.sslcontext.CertificateException("Could not export trust store", e);
+      }
+    };
+    return Response.ok(output)
+      .header("Content-Disposition", "attachment; filename=\"trust-store." + fileFormat.get().getExtension() + "\"")
+      .build();
+  }
+
+  @POST
+  @Path("trust-store")
+  @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+  @Operation(
+    summary = "Imports trusted certificates",
+    description = "Trusts all certificates of the uploaded PKCS12, JKS or JCEKS key store, which are not trusted yet. The password of the key store is passed in the required X-Key-Store-Password header. Certificates which are already trusted are left untouched, entries with private keys are ignored.",
+    tags = "SSL Context Plugin",
+    operationId = "ssl_context_import_trust_store"
+  )
+  @ApiResponse(responseCode = "204", description = "success")
+  @ApiResponse(responseCode = "400", description = "invalid or too large key store, missing or wrong password or too many certificates")
+  @ApiResponse(responseCode = "401", description = "not authenticated / invalid credentials")
+  @ApiResponse(responseCode = "403", description = "not authorized, the current user has no privileges to write the data")
+  @ApiResponse(
+    responseCode = "500",
+    description = "internal server error",
+    content = @Content(
+      mediaType = VndMediaType.ERROR_TYPE,
+      schema = @Schema(implementation = ErrorDto.class)
+    )
+  )
+  public Response importTrustStore(@HeaderParam(PASSWORD_HEADER) String password, InputStream is) throws IOException {
+    PermissionChecker.checkManageSSLContext();
+    checkPassword(password);
+    List<Certificate> certificates = readTrustStore(is, password);
+    store.importTrusted(certificates);
     return Response.noContent().build();
   }
 
-  @SuppressWarnings("UnstableApiUsage")
-  private Certificate extractCertFromInput(InputStream is) throws IOException {
-    InputStream lis = ByteStreams.limit(is, UPLOAD_LIMIT_BYTES + 1L);
-    byte[] encoded = IOUtils.toByteArray(lis);
-    doThrow().violation("File too large").when(encoded.length > UPLOAD_LIMIT_BYTES);
-    Certificate cert = new Certificate(encoded, Certificate.Error.UNKNOWN);
-    validateFileIsX509Cert(cert);
-    return cert;
+  /**
+   * Key store passwords are passed as header, so that they do not show up in access logs like query parameters.
+   */
+  static void checkPassword(String password) {
+    doThrow().violation("password header " + PASSWORD_HEADER + " is required", "password")
+      .when(password == null || password.isEmpty());
   }
 
-  private void validateFileIsX509Cert(Certificate cert) {
+  private List<Certificate> readTrustStore(InputStream is, String password) throws IOException {
     try {
-      cert.toX509();
+      return TrustStoreFile.read(is, password.toCharArray());
     } catch (CertificateException e) {
-      doThrow().violation("File is not a valid certificate").when(true);
+      doThrow().violation(e.getMessage()).when(true);
     }
+    return Collections.emptyList();
   }
 }
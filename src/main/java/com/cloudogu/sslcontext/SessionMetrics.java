@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.net.ssl.X509TrustManager;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Counts the full handshakes of the ssl context of the plugin, which had to verify the certificate chain of the
+ * server. Handshakes which resume a session of the client session cache are not counted, because the jvm offers no
+ * hook for them without wrapping the context, and a wrapped context breaks clients like OkHttp, which derive the
+ * trust manager from the platform socket factory. A resumption rate can therefore not be reported.
+ */
+class SessionMetrics {
+
+  private final Counter verifications;
+
+  SessionMetrics(MeterRegistry meterRegistry) {
+    this.verifications = Counter.builder("sslcontext.session.verifications")
+      .description("Full handshakes which verified the certificate chain of the server")
+      .register(meterRegistry);
+  }
+
+  long getVerificationCount() {
+    return (long) verifications.count();
+  }
+
+  /**
+   * Returns a trust manager which counts the verifications of server certificate chains.
+   */
+  X509TrustManager counting(X509TrustManager delegate) {
+    return new CountingTrustManager(delegate);
+  }
+
+  private final class CountingTrustManager implements X509TrustManager {
+
+    private final X509TrustManager delegate;
+
+    private CountingTrustManager(X509TrustManager delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+      delegate.checkClientTrusted(x509Certificates, s);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+      verifications.increment();
+      delegate.checkServerTrusted(x509Certificates, s);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return delegate.getAcceptedIssuers();
+    }
+  }
+}
@@ -16,6 +16,8 @@
 
 package com.cloudogu.sslcontext;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,27 +33,53 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Named("chain")
 class TrustManagerChain implements X509TrustManager {
 
   private static final Logger LOG = LoggerFactory.getLogger(TrustManagerChain.class);
 
-  private final Iterable<X509TrustManager> platformTrustManagers;
-  private Iterable<X509TrustManager> storedTrustManagers;
+  private final AtomicReference<TrustSnapshot> snapshot;
+  private final VerifiedChainCache verifiedChainCache;
+  private final PlatformRejectionCache platformRejectionCache = new PlatformRejectionCache();
+
+  private final Timer cachedChecks;
+  private final Timer platformChecks;
+  private final Timer storedChecks;
+  private final Timer failedChecks;
+  private final Timer reloads;
 
   @Inject
-  TrustManagerChain(TrustedCertificatesStore store) {
-    platformTrustManagers = createTrustManagers(null);
-    storedTrustManagers = createTrustManagers(store.getKeyStore());
-    store.onChange(keyStore -> storedTrustManagers = createTrustManagers(keyStore));
+  TrustManagerChain(TrustedCertificatesStore store, PlatformTrustManagers platformTrustManagers, MeterRegistry meterRegistry) {
+    snapshot = new AtomicReference<>(
+      new TrustSnapshot(platformTrustManagers.get(), createTrustManagers(store.getKeyStore()))
+    );
+    verifiedChainCache = new VerifiedChainCache(meterRegistry);
+    cachedChecks = checkTimer(meterRegistry, "cached");
+    platformChecks = checkTimer(meterRegistry, "platform");
+    storedChecks = checkTimer(meterRegistry, "stored");
+    failedChecks = checkTimer(meterRegistry, "failed");
+    reloads = Timer.builder("sslcontext.trust.reload")
+      .description("Creation of the trust managers for changed stored certificates")
+      .register(meterRegistry);
+    store.onChange(keyStore -> reloads.record(() -> {
+      List<X509TrustManager> storedTrustManagers = createTrustManagers(keyStore);
+      snapshot.updateAndGet(current -> current.withStoredTrustManagers(storedTrustManagers));
+      verifiedChainCache.invalidate();
+    }));
+  }
+
+  private static Timer checkTimer(MeterRegistry meterRegistry, String outcome) {
+    return Timer.builder("sslcontext.trust.check")
+      .description("Verification of server certificate chains, by the trust manager which accepted the chain")
+      .tag("outcome", outcome)
+      .register(meterRegistry);
   }
 
-  private Iterable<X509TrustManager> createTrustManagers(@Nullable KeyStore keyStore) {
+  static List<X509TrustManager> createTrustManagers(@Nullable KeyStore keyStore) {
     TrustManagerFactory trustManagerFactory;
     try {
       trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
@@ -70,15 +98,56 @@ class TrustManagerChain implements X509TrustManager {
 
   @Override
   public void checkServerTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+    long start = System.nanoTime();
+    Timer outcome = failedChecks;
     try {
-      for (X509TrustManager trustManager : platformTrustManagers) {
+      outcome = checkServerTrusted(snapshot.get(), x509Certificates, s);
+    } finally {
+      outcome.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private Timer checkServerTrusted(TrustSnapshot current, X509Certificate[] x509Certificates, String s) throws CertificateException {
+    String key = VerifiedChainCache.key(x509Certificates, s);
+    if (verifiedChainCache.isVerified(key, current.getVersion())) {
+      return cachedChecks;
+    }
+    Timer outcome = verifyServerTrusted(current, x509Certificates, s, key);
+    verifiedChainCache.verified(key, current.getVersion(), x509Certificates);
+    return outcome;
+  }
+
+  /**
+   * Verifies the chain and returns the timer of the trust managers which accepted it.
+   */
+  private Timer verifyServerTrusted(TrustSnapshot current, X509Certificate[] x509Certificates, String s, String key) throws CertificateException {
+    CertificateException rejection = platformRejectionCache.getRejection(key);
+    if (rejection != null) {
+      // the platform rejected the chain recently, so the stored trust managers are the only chance
+      try {
+        for (X509TrustManager trustManager : current.getStoredTrustManagers()) {
+          trustManager.checkServerTrusted(x509Certificates, s);
+        }
+        return storedChecks;
+      } catch (Exception storeException) {
+        LOG.trace("store trust manager returns error for chain rejected by platform", storeException);
+        // the cached exception is shared by all threads, so every handshake gets its own one
+        throw new CertificateException(rejection.getMessage(), rejection);
+      }
+    }
+    try {
+      for (X509TrustManager trustManager : current.getPlatformTrustManagers()) {
         trustManager.checkServerTrusted(x509Certificates, s);
       }
+      platformRejectionCache.accepted(key);
+      return platformChecks;
     } catch (CertificateException platformException) {
+      platformRejectionCache.rejected(key, platformException);
       try {
-        for (X509TrustManager trustManager : storedTrustManagers) {
+        for (X509TrustManager trustManager : current.getStoredTrustManagers()) {
           trustManager.checkServerTrusted(x509Certificates, s);
         }
+        return storedChecks;
       } catch (Exception storeException) {
         LOG.trace("store trust manager returns error", storeException);
         throw platformException;
@@ -88,13 +157,14 @@ class TrustManagerChain implements X509TrustManager {
 
   @Override
   public void checkClientTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+    TrustSnapshot current = snapshot.get();
     try {
-      for (X509TrustManager trustManager : platformTrustManagers) {
+      for (X509TrustManager trustManager : current.getPlatformTrustManagers()) {
         trustManager.checkClientTrusted(x509Certificates, s);
       }
     } catch (CertificateException platformException) {
       try {
-        for (X509TrustManager trustManager : storedTrustManagers) {
+        for (X509TrustManager trustManager : current.getStoredTrustManagers()) {
           trustManager.checkClientTrusted(x509Certificates, s);
         }
       } catch (Exception storeException) {
@@ -106,14 +176,10 @@ class TrustManagerChain implements X509TrustManager {
 
   @Override
   public X509Certificate[] getAcceptedIssuers() {
-    Set<X509Certificate> acceptedIssuers = new HashSet<>();
-    for (X509TrustManager tm : platformTrustManagers) {
-      acceptedIssuers.addAll(Arrays.asList(tm.getAcceptedIssuers()));
-    }
-    for (X509TrustManager tm : storedTrustManagers) {
-      acceptedIssuers.addAll(Arrays.asList(tm.getAcceptedIssuers()));
-    }
+    return snapshot.get().getAcceptedIssuers();
+  }
 
-    return acceptedIssuers.toArray(new X509Certificate[0]);
+  VerifiedChainCache getVerifiedChainCache() {
+    return verifiedChainCache;
   }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.net.ssl.X509TrustManager;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable view of the trust material used by the {@link TrustManagerChain}. Changes of the stored certificates
+ * never modify a snapshot, instead a new snapshot with an increased version is created and published. The issuers
+ * of the platform trust managers are collected only once and are shared by all following snapshots.
+ */
+final class TrustSnapshot {
+
+  private final long version;
+  private final List<X509TrustManager> platformTrustManagers;
+  private final List<X509TrustManager> storedTrustManagers;
+  private final X509Certificate[] platformIssuers;
+  private final X509Certificate[] acceptedIssuers;
+
+  TrustSnapshot(List<X509TrustManager> platformTrustManagers, List<X509TrustManager> storedTrustManagers) {
+    this(0, platformTrustManagers, collectIssuers(platformTrustManagers), storedTrustManagers);
+  }
+
+  private TrustSnapshot(long version, List<X509TrustManager> platformTrustManagers, X509Certificate[] platformIssuers, List<X509TrustManager> storedTrustManagers) {
+    this.version = version;
+    this.platformTrustManagers = ImmutableList.copyOf(platformTrustManagers);
+    this.storedTrustManagers = ImmutableList.copyOf(storedTrustManagers);
+    this.platformIssuers = platformIssuers;
+    this.acceptedIssuers = mergeIssuers(platformIssuers, storedTrustManagers);
+  }
+
+  private static X509Certificate[] collectIssuers(List<X509TrustManager> trustManagers) {
+    Set<X509Certificate> issuers = new LinkedHashSet<>();
+    for (X509TrustManager tm : trustManagers) {
+      issuers.addAll(Arrays.asList(tm.getAcceptedIssuers()));
+    }
+    return issuers.toArray(new X509Certificate[0]);
+  }
+
+  private static X509Certificate[] mergeIssuers(X509Certificate[] platformIssuers, List<X509TrustManager> storedTrustManagers) {
+    X509Certificate[] storedIssuers = collectIssuers(storedTrustManagers);
+    if (storedIssuers.length == 0) {
+      return platformIssuers;
+    }
+    Set<X509Certificate> issuers = new LinkedHashSet<>(Arrays.asList(platformIssuers));
+    issuers.addAll(Arrays.asList(storedIssuers));
+    return issuers.toArray(new X509Certificate[0]);
+  }
+
+  TrustSnapshot withStoredTrustManagers(List<X509TrustManager> storedTrustManagers) {
+    return new TrustSnapshot(version + 1, platformTrustManagers, platformIssuers, storedTrustManagers);
+  }
+
+  long getVersion() {
+    return version;
+  }
+
+  List<X509TrustManager> getPlatformTrustManagers() {
+    return platformTrustManagers;
+  }
+
+  List<X509TrustManager> getStoredTrustManagers() {
+    return storedTrustManagers;
+  }
+
+  /**
+   * Returns the issuers of the platform and the stored trust managers. The array is computed once per snapshot,
+   * callers receive a copy which they are free to modify.
+   */
+  X509Certificate[] getAcceptedIssuers() {
+    return acceptedIssuers.clone();
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads and writes key store files with trusted certificates, which are used to import and export the trusted
+ * certificates of the plugin at once. Only trusted certificate entries are read, entries with private keys are
+ * skipped.
+ */
+final class TrustStoreFile {
+
+  static final int IMPORT_LIMIT_BYTES = 10_000_000;
+  static final int MAX_CERTIFICATES = CertificateBundleReader.MAX_CERTIFICATES;
+
+  private static final int JKS_MAGIC = 0xFEEDFEED;
+  private static final int JCEKS_MAGIC = 0xCECECECE;
+
+  private TrustStoreFile() {
+  }
+
+  /**
+   * Returns the distinct trusted certificates of the given key store file. The type of the key store is detected
+   * from its content.
+   *
+   * @throws CertificateException if the file is too large, is no key store, the password is wrong or the key store
+   *                              contains too many certificates
+   */
+  static List<Certificate> read(InputStream input, char[] password) throws IOException, CertificateException {
+    return certificates(load(input, password, "File is not a valid trust store or the password is wrong"));
+  }
+
+  /**
+   * Reads a key store file with any kind of entries, the type of the key store is detected from its content.
+   *
+   * @throws CertificateException if the file is too large, is no key store or the password is wrong
+   */
+  static KeyStore readKeyStore(InputStream input, char[] password) throws IOException, CertificateException {
+    return load(input, password, "File is not a valid key store or the password is wrong");
+  }
+
+  private static KeyStore load(InputStream input, char[] password, String invalidMessage) throws IOException, CertificateException {
+    byte[] content = ByteStreams.toByteArray(ByteStreams.limit(input, IMPORT_LIMIT_BYTES + 1L));
+    if (content.length > IMPORT_LIMIT_BYTES) {
+      throw new CertificateException("File is larger than " + IMPORT_LIMIT_BYTES + " bytes");
+    }
+    try {
+      KeyStore keyStore = KeyStore.getInstance(detectType(content));
+      keyStore.load(new ByteArrayInputStream(content), password);
+      return keyStore;
+    } catch (IOException | GeneralSecurityException e) {
+      throw new CertificateException(invalidMessage, e);
+    }
+  }
+
+  private static String detectType(byte[] content) {
+    if (content.length >= 4) {
+      int magic = ((content[0] & 0xFF) << 24) | ((content[1] & 0xFF) << 16) | ((content[2] & 0xFF) << 8) | (content[3] & 0xFF);
+      if (magic == JKS_MAGIC) {
+        return "JKS";
+      } else if (magic == JCEKS_MAGIC) {
+        return "JCEKS";
+      }
+    }
+    return "PKCS12";
+  }
+
+  private static List<Certificate> certificates(KeyStore keyStore) throws CertificateException {
+    Map<String, Certificate> certificates = new LinkedHashMap<>();
+    try {
+      for (String alias : Collections.list(keyStore.aliases())) {
+        if (keyStore.isCertificateEntry(alias) && keyStore.getCertificate(alias) instanceof X509Certificate) {
+          Certificate certificate = new Certificate(keyStore.getCertificate(alias).getEncoded(), Certificate.Error.UNKNOWN);
+          certificates.putIfAbsent(certificate.getFingerprint(), certificate);
+          if (certificates.size() > MAX_CERTIFICATES) {
+            throw new CertificateException("File contains more than " + MAX_CERTIFICATES + " certificates");
+          }
+        }
+      }
+    } catch (GeneralSecurityException e) {
+      throw new CertificateException("File is not a valid trust store or the password is wrong", e);
+    }
+    return new ArrayList<>(certificates.values());
+  }
+
+  /**
+   * Writes all certificates of the given key store as new key store file of the given format.
+   */
+  static void write(KeyStore source, Format format, char[] password, OutputStream output) throws IOException, GeneralSecurityException {
+    KeyStore target = KeyStore.getInstance(format.type);
+    target.load(null, password);
+    for (String alias : Collections.list(source.aliases())) {
+      target.setCertificateEntry(alias, source.getCertificate(alias));
+    }
+    target.store(output, password);
+  }
+
+  enum Format {
+    PKCS12("PKCS12", "p12"),
+    JKS("JKS", "jks");
+
+    private final String type;
+    private final String extension;
+
+    Format(String type, String extension) {
+      this.type = type;
+      this.extension = extension;
+    }
+
+    String getExtension() {
+      return extension;
+    }
+
+    static Optional<Format> parse(String value) {
+      for (Format format : values()) {
+        if (format.name().equals(value.toUpperCase(Locale.ENGLISH))) {
+          return Optional.of(format);
+        }
+      }
+      return Optional.empty();
+    }
+  }
+}
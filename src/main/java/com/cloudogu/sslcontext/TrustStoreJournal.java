@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.store.Blob;
+import sonia.scm.store.BlobStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Persists the trusted certificates as a snapshot of the whole key store and a journal of changes. Every change
+ * is written as a small journal record with its own sequence number, the snapshot is only rewritten on
+ * compaction. A new snapshot is written before the older snapshots and the covered journal records are removed,
+ * so an interrupted write never destroys the last complete state.
+ * <p>
+ * Snapshots contain only the aliases and the encoded certificates, without password protection, because the trust
+ * store holds public certificates only. Snapshots written as JKS or PKCS12 key store by older versions are still
+ * read, {@link #isLegacy()} signals that they should be converted by the next write.
+ * <p>
+ * The journal is not thread safe, the {@link TrustedCertificatesStore} accesses it under its lock.
+ */
+class TrustStoreJournal {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TrustStoreJournal.class);
+
+  static final String LEGACY_SNAPSHOT = "trusted_certs";
+  static final String SNAPSHOT_PREFIX = "snapshot-";
+  static final String JOURNAL_PREFIX = "journal-";
+
+  static final String KEY_STORE_TYPE = "PKCS12";
+
+  private static final int RECORD_VERSION = 1;
+  // "SSLT"
+  private static final int SNAPSHOT_MAGIC = 0x53534C54;
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int JKS_MAGIC = 0xFEEDFEED;
+  private static final byte ADD = 'A';
+  private static final byte REMOVE = 'R';
+
+  private final BlobStore blobStore;
+  private final char[] password;
+
+  private long sequence = 0;
+  private long snapshotSequence = 0;
+  private boolean legacy = false;
+
+  TrustStoreJournal(BlobStore blobStore, char[] password) {
+    this.blobStore = blobStore;
+    this.password = password;
+  }
+
+  /**
+   * Loads the newest readable snapshot and replays all journal records written after it.
+   */
+  KeyStore load() throws GeneralSecurityException, IOException {
+    KeyStore keyStore = loadSnapshot();
+    List<Entry> journal = entries(JOURNAL_PREFIX);
+    // unreadable snapshots keep their sequence number reserved, so that it is never reused
+    sequence = Math.max(snapshotSequence, Math.max(lastSequence(journal), lastSequence(entries(SNAPSHOT_PREFIX))));
+    for (Entry entry : journal) {
+      if (entry.sequence > snapshotSequence) {
+        try {
+          replay(keyStore, entry.blob);
+        } catch (IOException | GeneralSecurityException e) {
+          // only a record which was interrupted while it was written can be broken, its change was never applied
+          LOG.warn("could not read journal record {} of trust store, skipping it", entry.blob.getId(), e);
+        }
+      }
+    }
+    return keyStore;
+  }
+
+  private KeyStore loadSnapshot() throws GeneralSecurityException, IOException {
+    List<Entry> snapshots = entries(SNAPSHOT_PREFIX);
+    for (int i = snapshots.size() - 1; i >= 0; i--) {
+      Entry snapshot = snapshots.get(i);
+      try {
+        KeyStore keyStore = read(snapshot.blob);
+        snapshotSequence = snapshot.sequence;
+        return keyStore;
+      } catch (IOException | GeneralSecurityException e) {
+        LOG.warn("could not read trust store snapshot {}, falling back to older snapshot", snapshot.blob.getId(), e);
+      }
+    }
+    snapshotSequence = 0;
+    Optional<Blob> legacySnapshot = blobStore.getOptional(LEGACY_SNAPSHOT);
+    if (legacySnapshot.isPresent()) {
+      return read(legacySnapshot.get());
+    }
+    legacy = false;
+    return create();
+  }
+
+  private KeyStore read(Blob blob) throws GeneralSecurityException, IOException {
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(blob.getInputStream()))) {
+      input.mark(4);
+      int magic = input.readInt();
+      if (magic == SNAPSHOT_MAGIC) {
+        KeyStore keyStore = readSnapshot(input);
+        legacy = false;
+        return keyStore;
+      }
+      input.reset();
+      KeyStore keyStore = readKeyStore(input, magic == JKS_MAGIC ? "JKS" : "PKCS12");
+      legacy = true;
+      return keyStore;
+    }
+  }
+
+  private KeyStore readSnapshot(DataInputStream input) throws GeneralSecurityException, IOException {
+    int version = input.readInt();
+    if (version != SNAPSHOT_VERSION) {
+      throw new IOException("unsupported snapshot version " + version);
+    }
+    KeyStore keyStore = create();
+    CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+    int count = input.readInt();
+    for (int i = 0; i < count; i++) {
+      String alias = input.readUTF();
+      keyStore.setCertificateEntry(alias, readCertificate(input, certificateFactory));
+    }
+    return keyStore;
+  }
+
+  private KeyStore readKeyStore(InputStream input, String type) throws GeneralSecurityException, IOException {
+    KeyStore source = KeyStore.getInstance(type);
+    source.load(input, password);
+    KeyStore keyStore = create();
+    for (String alias : Collections.list(source.aliases())) {
+      keyStore.setCertificateEntry(alias, source.getCertificate(alias));
+    }
+    return keyStore;
+  }
+
+  private static java.security.cert.Certificate readCertificate(DataInputStream input, CertificateFactory certificateFactory) throws GeneralSecurityException, IOException {
+    byte[] encoded = new byte[input.readInt()];
+    input.readFully(encoded);
+    return certificateFactory.generateCertificate(new ByteArrayInputStream(encoded));
+  }
+
+  private static void writeCertificate(DataOutputStream output, byte[] encoded) throws IOException {
+    output.writeInt(encoded.length);
+    output.write(encoded);
+  }
+
+  private static long lastSequence(List<Entry> entries) {
+    return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).sequence;
+  }
+
+  private KeyStore create() throws GeneralSecurityException, IOException {
+    KeyStore keyStore = KeyStore.getInstance(KEY_STORE_TYPE);
+    keyStore.load(null, password);
+    return keyStore;
+  }
+
+  private void replay(KeyStore keyStore, Blob blob) throws GeneralSecurityException, IOException {
+    CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+    try (DataInputStream input = new DataInputStream(blob.getInputStream())) {
+      int version = input.readInt();
+      if (version != RECORD_VERSION) {
+        throw new IOException("unsupported journal record version " + version);
+      }
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        byte type = input.readByte();
+        String alias = input.readUTF();
+        if (type == ADD) {
+          keyStore.setCertificateEntry(alias, readCertificate(input, certificateFactory));
+        } else if (type == REMOVE) {
+          if (keyStore.containsAlias(alias)) {
+            keyStore.deleteEntry(alias);
+          }
+        } else {
+          throw new IOException("unknown journal operation " + type);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the given changes as one new journal record.
+   */
+  void append(List<Operation> operations) throws IOException {
+    // the sequence number is reserved before the blob is created, so that a failed write never blocks its id
+    long next = ++sequence;
+    Blob blob = blobStore.create(JOURNAL_PREFIX + format(next));
+    try {
+      try (DataOutputStream output = new DataOutputStream(blob.getOutputStream())) {
+        output.writeInt(RECORD_VERSION);
+        output.writeInt(operations.size());
+        for (Operation operation : operations) {
+          output.writeByte(operation.encoded != null ? ADD : REMOVE);
+          output.writeUTF(operation.alias);
+          if (operation.encoded != null) {
+            writeCertificate(output, operation.encoded);
+          }
+        }
+      }
+      blob.commit();
+    } catch (IOException | RuntimeException e) {
+      discard(blob);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of journal records written since the last snapshot.
+   */
+  long size() {
+    return sequence - snapshotSequence;
+  }
+
+  /**
+   * Returns {@code true} if the trusted certificates were loaded from a key store written by an older version,
+   * which should be replaced by a snapshot with the next write.
+   */
+  boolean isLegacy() {
+    return legacy;
+  }
+
+  /**
+   * Writes the given key store, which has to contain every change of the journal, as new snapshot and removes
+   * the older snapshots and the journal records covered by the new snapshot.
+   */
+  void compact(KeyStore keyStore) throws GeneralSecurityException, IOException {
+    long snapshot = ++sequence;
+    Blob blob = blobStore.create(SNAPSHOT_PREFIX + format(snapshot));
+    try {
+      try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(blob.getOutputStream()))) {
+        List<String> aliases = Collections.list(keyStore.aliases());
+        output.writeInt(SNAPSHOT_MAGIC);
+        output.writeInt(SNAPSHOT_VERSION);
+        output.writeInt(aliases.size());
+        for (String alias : aliases) {
+          output.writeUTF(alias);
+          writeCertificate(output, keyStore.getCertificate(alias).getEncoded());
+        }
+      }
+      blob.commit();
+    } catch (IOException | GeneralSecurityException | RuntimeException e) {
+      discard(blob);
+      throw e;
+    }
+
+    snapshotSequence = snapshot;
+    legacy = false;
+
+    for (Entry entry : entries(JOURNAL_PREFIX)) {
+      if (entry.sequence < snapshot) {
+        blobStore.remove(entry.blob);
+      }
+    }
+    for (Entry entry : entries(SNAPSHOT_PREFIX)) {
+      if (entry.sequence < snapshot) {
+        blobStore.remove(entry.blob);
+      }
+    }
+    blobStore.getOptional(LEGACY_SNAPSHOT).ifPresent(blobStore::remove);
+  }
+
+  private void discard(Blob blob) {
+    try {
+      blobStore.remove(blob);
+    } catch (RuntimeException e) {
+      // the reserved sequence number is not used again, an incomplete record is skipped on load
+      LOG.warn("could not remove incomplete blob {} of trust store", blob.getId(), e);
+    }
+  }
+
+  private List<Entry> entries(String prefix) {
+    List<Entry> entries = new ArrayList<>();
+    for (Blob blob : new ArrayList<>(blobStore.getAll())) {
+      String id = blob.getId();
+      if (id.startsWith(prefix)) {
+        try {
+          entries.add(new Entry(Long.parseLong(id.substring(prefix.length())), blob));
+        } catch (NumberFormatException e) {
+          LOG.warn("found unexpected blob {} in trust store", id);
+        }
+      }
+    }
+    entries.sort(Comparator.comparingLong(entry -> entry.sequence));
+    return entries;
+  }
+
+  private static String format(long sequence) {
+    return String.format("%019d", sequence);
+  }
+
+  private static final class Entry {
+
+    private final long sequence;
+    private final Blob blob;
+
+    private Entry(long sequence, Blob blob) {
+      this.sequence = sequence;
+      this.blob = blob;
+    }
+  }
+
+  /**
+   * A single change of the trusted certificates.
+   */
+  static final class Operation {
+
+    private final String alias;
+    private final byte[] encoded;
+
+    private Operation(String alias, byte[] encoded) {
+      this.alias = alias;
+      this.encoded = encoded;
+    }
+
+    static Operation add(String alias, byte[] encoded) {
+      return new Operation(alias, encoded);
+    }
+
+    static Operation remove(String alias) {
+      return new Operation(alias, null);
+    }
+  }
+}
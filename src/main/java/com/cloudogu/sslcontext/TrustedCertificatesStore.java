@@ -16,42 +16,106 @@
 
 package com.cloudogu.sslcontext;
 
-import sonia.scm.store.Blob;
-import sonia.scm.store.BlobStore;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import sonia.scm.store.BlobStoreFactory;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.function.BiConsumer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 @Singleton
 class TrustedCertificatesStore {
 
+  private static final Logger LOG = LoggerFactory.getLogger(TrustedCertificatesStore.class);
+
+  static final String DEBOUNCE_PROPERTY = "sslcontext.trust-store.debounce-millis";
+  static final String JOURNAL_THRESHOLD_PROPERTY = "sslcontext.trust-store.journal-threshold";
+  static final int DEFAULT_JOURNAL_THRESHOLD = 100;
+
   private static final String STORE_NAME = "trust-store";
-  private static final String NAME = "trusted_certs";
   private static final char[] PASSWORD = "password".toCharArray();
 
-  private final BlobStore blobStore;
-  private final KeyStore keyStore;
+  private final TrustStoreJournal journal;
+  private final Duration debounce;
+  private final int journalThreshold;
+  private final Timer appendTimer;
+  private final Timer compactTimer;
+  private volatile KeyStore keyStore;
 
-  private final List<Consumer<KeyStore>> listeners = new ArrayList<>();
+  private final List<Consumer<KeyStore>> listeners = new CopyOnWriteArrayList<>();
+  private final List<TrustStoreJournal.Operation> pendingOperations = new ArrayList<>();
+
+  private ScheduledExecutorService scheduler;
+  private boolean flushScheduled = false;
+  private boolean compactionScheduled = false;
+  private boolean closed = false;
 
   @Inject
-  TrustedCertificatesStore(BlobStoreFactory storeFactory) {
-    this.blobStore = storeFactory.withName(STORE_NAME).build();
-    this.keyStore = loadKeyStore();
+  TrustedCertificatesStore(BlobStoreFactory storeFactory, MeterRegistry meterRegistry) {
+    this(
+      storeFactory,
+      meterRegistry,
+      Duration.ofMillis(Long.getLong(DEBOUNCE_PROPERTY, 0L)),
+      Integer.getInteger(JOURNAL_THRESHOLD_PROPERTY, DEFAULT_JOURNAL_THRESHOLD)
+    );
+  }
+
+  TrustedCertificatesStore(BlobStoreFactory storeFactory, MeterRegistry meterRegistry, Duration debounce) {
+    this(storeFactory, meterRegistry, debounce, DEFAULT_JOURNAL_THRESHOLD);
+  }
+
+  /**
+   * @param journalThreshold number of journal records after which the trust store is compacted in the background,
+   *                         with zero or less every change rewrites the whole trust store
+   */
+  TrustedCertificatesStore(BlobStoreFactory storeFactory, MeterRegistry meterRegistry, Duration debounce, int journalThreshold) {
+    this.journal = new TrustStoreJournal(storeFactory.withName(STORE_NAME).build(), PASSWORD);
+    this.debounce = debounce;
+    this.journalThreshold = journalThreshold;
+    this.appendTimer = persistTimer(meterRegistry, "append");
+    this.compactTimer = persistTimer(meterRegistry, "compact");
+    Timer loadTimer = Timer.builder("sslcontext.trust.store.load")
+      .description("Loading of the stored trust store")
+      .register(meterRegistry);
+    this.keyStore = loadTimer.record(this::loadKeyStore);
+    Gauge.builder("sslcontext.certificates", this, TrustedCertificatesStore::size)
+      .description("Number of stored certificates")
+      .tag("status", "trusted")
+      .register(meterRegistry);
+  }
+
+  private static Timer persistTimer(MeterRegistry meterRegistry, String operation) {
+    return Timer.builder("sslcontext.trust.store.persist")
+      .description("Persisting changes of the trusted certificates, as journal record or as compacted snapshot")
+      .tag("operation", operation)
+      .register(meterRegistry);
+  }
+
+  private double size() {
+    try {
+      return keyStore.size();
+    } catch (KeyStoreException e) {
+      return Double.NaN;
+    }
   }
 
   public void onChange(Consumer<KeyStore> listener) {
@@ -60,16 +124,7 @@ class TrustedCertificatesStore {
 
   private KeyStore loadKeyStore() {
     try {
-      KeyStore ks = KeyStore.getInstance("JKS");
-      Optional<Blob> optionalBlob = blobStore.getOptional(NAME);
-      if (optionalBlob.isPresent()) {
-        try (InputStream is = optionalBlob.get().getInputStream()) {
-          ks.load(is, PASSWORD);
-        }
-      } else {
-        ks.load(null, PASSWORD);
-      }
-      return ks;
+      return journal.load();
     } catch (IOException | GeneralSecurityException e) {
       throw new com.cloudogu.sslcontext.CertificateException(
         "Could not load stored trust store",
@@ -79,42 +134,197 @@ class TrustedCertificatesStore {
   }
 
   void add(Certificate certificate) {
-    updateKeyStore(certificate, (ks, cert) -> {
-      try {
-        ks.setCertificateEntry(certificate.getFingerprint(), toX509(certificate));
-      } catch (KeyStoreException e) {
-        throw new com.cloudogu.sslcontext.CertificateException(
-          "Could not add certificate to stored trust store",
-          e
-        );
-      }
-    });
+    batch(transaction -> transaction.add(certificate));
   }
 
   void remove(Certificate certificate) {
-    updateKeyStore(certificate, (ks, cert) -> {
+    batch(transaction -> transaction.remove(certificate));
+  }
+
+  /**
+   * Applies all changes of the given consumer at once. The changes are applied to a copy of the current key store,
+   * which is persisted and passed to the listeners only once, after all changes were applied. If one of the
+   * changes fails, none of them is applied. With a debounce window, persistence and notification are delayed
+   * until the window is over, so that several batches are written together.
+   */
+  synchronized void batch(Consumer<Transaction> changes) {
+    KeyStore modified;
+    try {
+      modified = copy(keyStore);
+    } catch (GeneralSecurityException | IOException e) {
+      throw new com.cloudogu.sslcontext.CertificateException(
+        "Could not modify stored trust store",
+        e
+      );
+    }
+    KeyStoreTransaction transaction = new KeyStoreTransaction(modified);
+    changes.accept(transaction);
+    if (transaction.operations.isEmpty()) {
+      return;
+    }
+    KeyStore previous = keyStore;
+    keyStore = modified;
+    pendingOperations.addAll(transaction.operations);
+    if (debounce.isZero() || closed) {
       try {
-        ks.deleteEntry(cert.getFingerprint());
-      } catch (KeyStoreException e) {
+        persist();
+      } catch (GeneralSecurityException | IOException e) {
+        // only changes which could not be written are rolled back, failing listeners do not affect the stored state
+        keyStore = previous;
+        pendingOperations.clear();
         throw new com.cloudogu.sslcontext.CertificateException(
-          "Could not remove certificate from stored trust store",
+          "Could not modify stored trust store",
           e
         );
       }
-    });
+      notifyListeners();
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      scheduler().schedule(this::flushScheduled, debounce.toMillis(), TimeUnit.MILLISECONDS);
+    }
   }
 
-  private void updateKeyStore(Certificate certificate, BiConsumer<KeyStore, Certificate> consumer) {
-    try (OutputStream os = getBlob().getOutputStream()) {
-      consumer.accept(keyStore, certificate);
-      keyStore.store(os, PASSWORD);
-      listeners.forEach(c -> c.accept(keyStore));
+  private void flushScheduled() {
+    try {
+      flush();
+    } catch (Exception e) {
+      LOG.error("could not persist stored trust store", e);
+    }
+  }
+
+  /**
+   * Persists the pending changes and notifies all listeners.
+   */
+  synchronized void flush() {
+    flushScheduled = false;
+    if (pendingOperations.isEmpty()) {
+      return;
+    }
+    try {
+      persist();
     } catch (GeneralSecurityException | IOException e) {
       throw new com.cloudogu.sslcontext.CertificateException(
         "Could not modify stored trust store",
         e
       );
     }
+    notifyListeners();
+  }
+
+  private void persist() throws GeneralSecurityException, IOException {
+    if (journalThreshold <= 0 || journal.isLegacy()) {
+      // key stores of older versions are converted with the first write
+      compact(keyStore);
+    } else {
+      append(pendingOperations);
+    }
+    pendingOperations.clear();
+  }
+
+  /**
+   * Passes the persisted key store to the listeners and schedules a compaction if the journal grew too long.
+   */
+  private void notifyListeners() {
+    KeyStore current = keyStore;
+    for (Consumer<KeyStore> listener : listeners) {
+      try {
+        listener.accept(current);
+      } catch (RuntimeException e) {
+        LOG.error("listener could not process changed trust store", e);
+      }
+    }
+    if (journalThreshold > 0 && journal.size() >= journalThreshold && !compactionScheduled && !closed) {
+      compactionScheduled = true;
+      scheduler().execute(this::compactScheduled);
+    }
+  }
+
+  private void compactScheduled() {
+    try {
+      compact();
+    } catch (Exception e) {
+      LOG.error("could not compact stored trust store", e);
+    }
+  }
+
+  /**
+   * Writes the current key store as new snapshot and removes the journal records which are covered by it.
+   */
+  synchronized void compact() {
+    compactionScheduled = false;
+    try {
+      if (!pendingOperations.isEmpty()) {
+        append(pendingOperations);
+        pendingOperations.clear();
+      }
+      compact(keyStore);
+    } catch (GeneralSecurityException | IOException e) {
+      throw new com.cloudogu.sslcontext.CertificateException(
+        "Could not compact stored trust store",
+        e
+      );
+    }
+  }
+
+  /**
+   * Stops the background thread and persists the pending changes. Changes after closing are persisted
+   * immediately.
+   */
+  void close() {
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      closed = true;
+      executor = scheduler;
+      scheduler = null;
+    }
+    if (executor != null) {
+      // the scheduled flush is replaced by the flush below, a running compaction may finish
+      executor.shutdownNow();
+      try {
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+          LOG.warn("background thread of stored trust store did not terminate");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+
+  private void append(List<TrustStoreJournal.Operation> operations) throws IOException {
+    long start = System.nanoTime();
+    try {
+      journal.append(operations);
+    } finally {
+      appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void compact(KeyStore current) throws GeneralSecurityException, IOException {
+    long start = System.nanoTime();
+    try {
+      journal.compact(current);
+    } finally {
+      compactTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private ScheduledExecutorService scheduler() {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("ssl-context-trust-store-%d").setDaemon(true).build()
+      );
+    }
+    return scheduler;
+  }
+
+  private KeyStore copy(KeyStore source) throws GeneralSecurityException, IOException {
+    KeyStore copy = KeyStore.getInstance(source.getType());
+    copy.load(null, PASSWORD);
+    for (String alias : Collections.list(source.aliases())) {
+      copy.setCertificateEntry(alias, source.getCertificate(alias));
+    }
+    return copy;
   }
 
   private X509Certificate toX509(Certificate certificate) {
@@ -128,11 +338,59 @@ class TrustedCertificatesStore {
     }
   }
 
-  private Blob getBlob() {
-    return blobStore.getOptional(NAME).orElseGet(() -> blobStore.create(NAME));
+  private class KeyStoreTransaction implements Transaction {
+
+    private final KeyStore target;
+    private final List<TrustStoreJournal.Operation> operations = new ArrayList<>();
+
+    private KeyStoreTransaction(KeyStore target) {
+      this.target = target;
+    }
+
+    @Override
+    public void add(Certificate certificate) {
+      try {
+        target.setCertificateEntry(certificate.getFingerprint(), toX509(certificate));
+        operations.add(TrustStoreJournal.Operation.add(certificate.getFingerprint(), certificate.getEncoded()));
+      } catch (KeyStoreException e) {
+        throw new com.cloudogu.sslcontext.CertificateException(
+          "Could not add certificate to stored trust store",
+          e
+        );
+      }
+    }
+
+    @Override
+    public void remove(Certificate certificate) {
+      try {
+        if (target.containsAlias(certificate.getFingerprint())) {
+          target.deleteEntry(certificate.getFingerprint());
+          operations.add(TrustStoreJournal.Operation.remove(certificate.getFingerprint()));
+        }
+      } catch (KeyStoreException e) {
+        throw new com.cloudogu.sslcontext.CertificateException(
+          "Could not remove certificate from stored trust store",
+          e
+        );
+      }
+    }
   }
 
+  /**
+   * Returns the current trusted certificates. The returned key store must not be modified, every change of the
+   * trusted certificates is applied to a copy which replaces the current key store afterwards.
+   */
   public KeyStore getKeyStore() {
     return keyStore;
   }
+
+  /**
+   * Changes of the trusted certificates, which are applied together by {@link #batch(Consumer)}.
+   */
+  interface Transaction {
+
+    void add(Certificate certificate);
+
+    void remove(Certificate certificate);
+  }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Remembers certificate chains which were successfully verified by the {@link TrustManagerChain}, so that the
+ * expensive path validation is not repeated for every handshake to the same host. An entry is valid until the
+ * first certificate of the chain expires, but never longer than the configured time to live. Entries are bound
+ * to the version of the {@link TrustSnapshot} they were verified with.
+ */
+class VerifiedChainCache {
+
+  static final long MAX_SIZE = 1000;
+  static final Duration TTL = Duration.ofMinutes(30);
+
+  private final Cache<String, Entry> cache;
+  private final Clock clock;
+  private final Duration ttl;
+
+  private final Counter hits;
+  private final Counter misses;
+
+  VerifiedChainCache(MeterRegistry meterRegistry) {
+    this(meterRegistry, Clock.systemUTC(), MAX_SIZE, TTL);
+  }
+
+  VerifiedChainCache(MeterRegistry meterRegistry, Clock clock, long maxSize, Duration ttl) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(ttl)
+      .build();
+    this.clock = clock;
+    this.ttl = ttl;
+
+    this.hits = Counter.builder("sslcontext.trust.cache.requests")
+      .description("Lookups of verified certificate chains")
+      .tag("result", "hit")
+      .register(meterRegistry);
+    this.misses = Counter.builder("sslcontext.trust.cache.requests")
+      .description("Lookups of verified certificate chains")
+      .tag("result", "miss")
+      .register(meterRegistry);
+    Gauge.builder("sslcontext.trust.cache.size", cache, Cache::size)
+      .description("Number of cached verified certificate chains")
+      .register(meterRegistry);
+  }
+
+  static String key(X509Certificate[] chain, String authType) throws CertificateEncodingException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (X509Certificate certificate : chain) {
+      hasher.putBytes(certificate.getEncoded());
+    }
+    return hasher.putString(String.valueOf(authType), StandardCharsets.UTF_8).hash().toString();
+  }
+
+  boolean isVerified(String key, long version) {
+    Entry entry = cache.getIfPresent(key);
+    if (entry != null && entry.version == version && clock.instant().isBefore(entry.validUntil)) {
+      hits.increment();
+      return true;
+    }
+    if (entry != null) {
+      cache.invalidate(key);
+    }
+    misses.increment();
+    return false;
+  }
+
+  void verified(String key, long version, X509Certificate[] chain) {
+    Instant validUntil = clock.instant().plus(ttl);
+    for (X509Certificate certificate : chain) {
+      Instant notAfter = certificate.getNotAfter().toInstant();
+      if (notAfter.isBefore(validUntil)) {
+        validUntil = notAfter;
+      }
+    }
+    cache.put(key, new Entry(version, validUntil));
+  }
+
+  void invalidate() {
+    cache.invalidateAll();
+  }
+
+  long getHitCount() {
+    return (long) hits.count();
+  }
+
+  long getMissCount() {
+    return (long) misses.count();
+  }
+
+  private static final class Entry {
+
+    private final long version;
+    private final Instant validUntil;
+
+    private Entry(long version, Instant validUntil) {
+      this.version = version;
+      this.validUntil = validUntil;
+    }
+  }
+}
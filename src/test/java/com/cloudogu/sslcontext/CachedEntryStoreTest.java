@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.store.DataStore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.cloudogu.sslcontext.Certificate.Error.UNKNOWN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CachedEntryStoreTest {
+
+  @Mock
+  private DataStore<CertificateEntry> store;
+
+  private final CertificateEntry marvin = entry("marvin");
+  private final CertificateEntry trillian = entry("trillian");
+
+  @Test
+  void shouldReadStoreOnlyOnce() {
+    when(store.getAll()).thenReturn(entries(marvin, trillian));
+    CachedEntryStore cache = new CachedEntryStore(store, 10);
+
+    assertThat(cache.getAll()).containsExactlyInAnyOrder(marvin, trillian);
+    assertThat(cache.get(marvin.getFingerprint())).isSameAs(marvin);
+    assertThat(cache.get("unknown")).isNull();
+
+    verify(store, times(1)).getAll();
+    verify(store, never()).get(anyString());
+  }
+
+  @Test
+  void shouldWriteThrough() {
+    when(store.getAll()).thenReturn(entries(marvin));
+    CachedEntryStore cache = new CachedEntryStore(store, 10);
+
+    cache.put(trillian.getFingerprint(), trillian);
+    cache.remove(marvin.getFingerprint());
+
+    verify(store).put(trillian.getFingerprint(), trillian);
+    verify(store).remove(marvin.getFingerprint());
+    assertThat(cache.getAll()).containsExactly(trillian);
+    assertThat(cache.get(marvin.getFingerprint())).isNull();
+    assertThat(cache.isComplete()).isTrue();
+  }
+
+  @Test
+  void shouldReadEvictedEntriesFromStore() {
+    Map<String, CertificateEntry> all = entries(marvin, trillian);
+    when(store.getAll()).thenReturn(all);
+    CachedEntryStore cache = new CachedEntryStore(store, 1);
+
+    assertThat(cache.isComplete()).isFalse();
+    assertThat(cache.getAll()).containsExactlyInAnyOrder(marvin, trillian);
+
+    when(store.get(anyString())).thenAnswer(invocation -> all.get(invocation.getArgument(0, String.class)));
+    assertThat(cache.get(marvin.getFingerprint())).isEqualTo(marvin);
+    assertThat(cache.get(trillian.getFingerprint())).isEqualTo(trillian);
+  }
+
+  private static CertificateEntry entry(String content) {
+    return new CertificateEntry(new Certificate(content.getBytes(), UNKNOWN));
+  }
+
+  private static Map<String, CertificateEntry> entries(CertificateEntry... entries) {
+    Map<String, CertificateEntry> map = new HashMap<>();
+    for (CertificateEntry entry : entries) {
+      map.put(entry.getFingerprint(), entry);
+    }
+    return map;
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.cloudogu.sslcontext;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.github.sdorra.jse.ShiroExtension;
 import org.github.sdorra.jse.SubjectAware;
 import org.junit.jupiter.api.BeforeEach;
@@ -23,6 +24,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import sonia.scm.store.InMemoryDataStoreFactory;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 import java.security.KeyPair;
@@ -33,7 +35,14 @@ import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createCipherHandler;
 import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
 import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
 import static com.cloudogu.sslcontext.Certificate.Error.EXPIRED;
@@ -48,11 +57,15 @@ class CapturingTrustManagerTest {
 
   private static final char[] PASSWORD = "test".toCharArray();
 
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
   private CertificateStore store;
+  private RejectedCertificateCollector collector;
 
   @BeforeEach
   void setUpStore() {
-    store = new CertificateStore(new InMemoryDataStoreFactory(), new TrustedCertificatesStore(new InMemoryBlobStoreFactory()));
+    store = new CertificateStore(new InMemoryDataStoreFactory(), new InMemoryBlobStoreFactory(), new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), new SimpleMeterRegistry()), new SimpleMeterRegistry());
+    collector = new RejectedCertificateCollector(store, new SimpleMeterRegistry(), 10);
   }
 
   @Test
@@ -100,7 +113,38 @@ class CapturingTrustManagerTest {
     assertRejected(EXPIRED);
   }
 
+  @Test
+  void shouldStoreCertificateOfConcurrentHandshakesOnce(EchoServer echoServer) throws Exception {
+    KeyStore keyStore = createKeyStore(
+      Instant.now().minus(1, ChronoUnit.MINUTES),
+      Instant.now().plus(1, ChronoUnit.MINUTES)
+    );
+    echoServer.start(keyStore, PASSWORD);
+    SSLContext context = createSSLContextProvider(keyStore).get();
+
+    ExecutorService clients = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> handshakes = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        handshakes.add(clients.submit(() -> echoServer.handshake(context)));
+      }
+      for (Future<Boolean> handshake : handshakes) {
+        assertThat(handshake.get()).isFalse();
+      }
+    } finally {
+      clients.shutdown();
+    }
+
+    assertThat(meterRegistry.get("sslcontext.trust.rejections").tag("error", "unknown").counter().count()).isEqualTo(8);
+    collector.flush();
+    assertThat(store.getAllRejected()).hasSize(1);
+  }
+
   private void assertRejected(Certificate.Error unknown) {
+    assertThat(
+      meterRegistry.get("sslcontext.trust.rejections").tag("error", unknown.name().toLowerCase(Locale.ENGLISH)).counter().count()
+    ).isEqualTo(1);
+    collector.flush();
     Certificate cert = store.getAllRejected().iterator().next();
     assertThat(cert.getStatus()).isEqualTo(REJECTED);
     assertThat(cert.getError()).isEqualTo(unknown);
@@ -108,7 +152,10 @@ class CapturingTrustManagerTest {
 
   private SSLContextProvider createSSLContextProvider(KeyStore trustStore) throws NoSuchAlgorithmException, KeyStoreException {
     return new SSLContextProvider(
-      new CapturingTrustManager(store, getTrustManager(trustStore))
+      new CapturingTrustManager(collector, getTrustManager(trustStore), meterRegistry),
+      new ClientIdentityKeyManager(new ClientIdentityStore(new InMemoryBlobStoreFactory(), createCipherHandler())),
+      new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), new SimpleMeterRegistry()),
+      meterRegistry
     );
   }
 
@@ -19,11 +19,14 @@ package com.cloudogu.sslcontext;
 import org.bouncycastle.jce.X509Principal;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.x509.X509V3CertificateGenerator;
+import sonia.scm.security.CipherHandler;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
@@ -31,6 +34,10 @@ import java.security.cert.X509Certificate;
 import java.time.Instant;
 import java.util.Date;
 
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
 public class CertTestUtil {
 
   static {
@@ -57,4 +64,26 @@ public class CertTestUtil {
     v3CertGen.setSignatureAlgorithm("SHA256WithRSAEncryption");
     return v3CertGen.generateX509Certificate(keyPair.getPrivate());
   }
+
+  static KeyStore createKeyStore(KeyPair keyPair, X509Certificate certificate, char[] password) throws GeneralSecurityException, IOException {
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    keyStore.setKeyEntry("hitchhiker_cert", keyPair.getPrivate(), password, new java.security.cert.Certificate[]{certificate});
+    return keyStore;
+  }
+
+  static CipherHandler createCipherHandler() {
+    CipherHandler cipherHandler = mock(CipherHandler.class);
+    lenient().when(cipherHandler.encode(anyString())).thenAnswer(
+      invocation -> "encrypted:" + new StringBuilder(invocation.<String>getArgument(0)).reverse()
+    );
+    lenient().when(cipherHandler.decode(anyString())).thenAnswer(invocation -> {
+      String value = invocation.getArgument(0);
+      if (!value.startsWith("encrypted:")) {
+        throw new IllegalArgumentException("value is not encrypted");
+      }
+      return new StringBuilder(value.substring("encrypted:".length())).reverse().toString();
+    });
+    return cipherHandler;
+  }
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.io.Resources;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CertificateBundleReaderTest {
+
+  private final CertificateBundleReader reader = new CertificateBundleReader();
+
+  @Test
+  void shouldReadDerCertificate() throws Exception {
+    byte[] encoded = resource("cert-001");
+
+    List<Certificate> certificates = read(encoded);
+
+    assertThat(certificates).hasSize(1);
+    assertThat(certificates.get(0).getEncoded()).isEqualTo(encoded);
+  }
+
+  @Test
+  void shouldReadSequenceOfDerCertificates() throws Exception {
+    byte[] first = resource("cert-001");
+    byte[] second = resource("cert-002-expired");
+
+    List<Certificate> certificates = read(concat(first, second));
+
+    assertThat(certificates).extracting(Certificate::getEncoded).containsExactly(first, second);
+  }
+
+  @Test
+  void shouldReadPemBundleAndSkipOtherBlocks() throws Exception {
+    byte[] first = resource("cert-001");
+    byte[] second = resource("cert-002-expired");
+    String bundle = "subject=CN=first\n"
+      + pem("CERTIFICATE", first)
+      + pem("PRIVATE KEY", "secret".getBytes(StandardCharsets.US_ASCII))
+      + pem("TRUSTED CERTIFICATE", second);
+
+    List<Certificate> certificates = read(bundle.getBytes(StandardCharsets.US_ASCII));
+
+    assertThat(certificates).extracting(Certificate::getEncoded).containsExactly(first, second);
+  }
+
+  @Test
+  void shouldReadPkcs7() throws Exception {
+    byte[] pkcs7 = pkcs7(resource("cert-001"), resource("cert-002-expired"));
+
+    assertThat(read(pkcs7)).hasSize(2);
+  }
+
+  @Test
+  void shouldReadPemEncodedPkcs7() throws Exception {
+    byte[] pkcs7 = pkcs7(resource("cert-001"), resource("cert-002-expired"));
+
+    assertThat(read(pem("PKCS7", pkcs7).getBytes(StandardCharsets.US_ASCII))).hasSize(2);
+  }
+
+  @Test
+  void shouldFailWithoutCertificate() {
+    CertificateException exception = assertThrows(CertificateException.class, () -> read("hello".getBytes()));
+
+    assertThat(exception).hasMessage("File contains no certificate");
+  }
+
+  @Test
+  void shouldFailForInvalidCertificate() {
+    byte[] encoded = {0x30, 0x03, 0x02, 0x01, 0x00};
+
+    assertThrows(CertificateException.class, () -> read(encoded));
+  }
+
+  @Test
+  void shouldFailForTruncatedCertificate() throws IOException {
+    byte[] encoded = resource("cert-001");
+    byte[] truncated = new byte[encoded.length / 2];
+    System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+    CertificateException exception = assertThrows(CertificateException.class, () -> read(truncated));
+
+    assertThat(exception).hasMessage("File is not a valid certificate");
+  }
+
+  @Test
+  void shouldFailForUnterminatedPemBlock() throws IOException {
+    String pem = pem("CERTIFICATE", resource("cert-001"));
+    byte[] unterminated = pem.substring(0, pem.indexOf("-----END")).getBytes(StandardCharsets.US_ASCII);
+
+    assertThrows(CertificateException.class, () -> read(unterminated));
+  }
+
+  @Test
+  void shouldFailForTooLongLine() {
+    CertificateBundleReader limited = new CertificateBundleReader(100, 10);
+    byte[] text = new byte[1000];
+    Arrays.fill(text, (byte) 'x');
+
+    CertificateException exception = assertThrows(
+      CertificateException.class, () -> limited.read(new ByteArrayInputStream(text))
+    );
+
+    assertThat(exception).hasMessage("File is not a valid certificate");
+  }
+
+  @Test
+  void shouldFailForTooLargeDerStructureWithoutReadingIt() {
+    // announces a certificate with almost 2 gigabytes, but the content is never read
+    byte[] header = {0x30, (byte) 0x84, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x30};
+
+    CertificateException exception = assertThrows(CertificateException.class, () -> read(header));
+
+    assertThat(exception).hasMessage("Certificate is larger than 50000 bytes");
+  }
+
+  @Test
+  void shouldFailForTooLargePkcs7() throws Exception {
+    byte[] pkcs7 = pkcs7(resource("cert-001"), resource("cert-002-expired"));
+    CertificateBundleReader limited = new CertificateBundleReader(1000, 1);
+
+    CertificateException exception = assertThrows(
+      CertificateException.class, () -> limited.read(new ByteArrayInputStream(pkcs7))
+    );
+
+    assertThat(exception).hasMessage("File contains more than 1 certificates or a certificate larger than 1000 bytes");
+  }
+
+  @Test
+  void shouldStopReadingEndlessStreamAfterLimit() throws IOException {
+    byte[] encoded = resource("cert-001");
+    CertificateBundleReader limited = new CertificateBundleReader(CertificateBundleReader.CERTIFICATE_LIMIT_BYTES, 2);
+    InputStream endless = new InputStream() {
+      private long position;
+
+      @Override
+      public int read() {
+        return encoded[(int) (position++ % encoded.length)] & 0xFF;
+      }
+    };
+
+    CertificateException exception = assertThrows(CertificateException.class, () -> limited.read(endless));
+
+    assertThat(exception).hasMessage("File contains more than 2 certificates");
+  }
+
+  @Test
+  void shouldFailForTooLargeCertificate() throws IOException {
+    byte[] encoded = resource("cert-001");
+    CertificateBundleReader limited = new CertificateBundleReader(100, 10);
+
+    CertificateException exception = assertThrows(
+      CertificateException.class, () -> limited.read(new ByteArrayInputStream(encoded))
+    );
+
+    assertThat(exception).hasMessage("Certificate is larger than 100 bytes");
+  }
+
+  @Test
+  void shouldFailForTooManyCertificates() throws IOException {
+    byte[] encoded = resource("cert-001");
+    CertificateBundleReader limited = new CertificateBundleReader(CertificateBundleReader.CERTIFICATE_LIMIT_BYTES, 2);
+
+    CertificateException exception = assertThrows(
+      CertificateException.class, () -> limited.read(new ByteArrayInputStream(concat(encoded, encoded, encoded)))
+    );
+
+    assertThat(exception).hasMessage("File contains more than 2 certificates");
+  }
+
+  private List<Certificate> read(byte[] content) throws IOException, CertificateException {
+    return reader.read(new ByteArrayInputStream(content));
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private static byte[] resource(String name) throws IOException {
+    return Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/" + name));
+  }
+
+  private static String pem(String type, byte[] content) {
+    return "-----BEGIN " + type + "-----\n"
+      + Base64.getMimeEncoder().encodeToString(content)
+      + "\n-----END " + type + "-----\n";
+  }
+
+  private static byte[] pkcs7(byte[]... encoded) throws Exception {
+    CertificateFactory factory = CertificateFactory.getInstance("X.509");
+    List<X509Certificate> chain = new ArrayList<>();
+    for (byte[] certificate : encoded) {
+      chain.add((X509Certificate) factory.generateCertificate(new ByteArrayInputStream(certificate)));
+    }
+    return factory.generateCertPath(chain).getEncoded("PKCS7");
+  }
+
+  private static byte[] concat(byte[]... parts) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      output.write(part);
+    }
+    return output.toByteArray();
+  }
+}
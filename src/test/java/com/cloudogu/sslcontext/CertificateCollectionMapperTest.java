@@ -19,6 +19,7 @@ package com.cloudogu.sslcontext;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.util.Providers;
 import de.otto.edison.hal.HalRepresentation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.github.sdorra.jse.ShiroExtension;
 import org.github.sdorra.jse.SubjectAware;
@@ -62,6 +63,7 @@ class CertificateCollectionMapperTest {
     ScmPathInfoStore scmPathInfoStore = new ScmPathInfoStore();
     scmPathInfoStore.set(pathInfo);
     mapper.scmPathInfoStore = Providers.of(scmPathInfoStore);
+    mapper.detailsCache = new CertificateDetailsCache(new SimpleMeterRegistry());
     collectionMapper = new CertificateCollectionMapper(mapper, Providers.of(scmPathInfoStore));
   }
 
@@ -91,6 +93,54 @@ class CertificateCollectionMapperTest {
     assertThat(secondCertDto.getStatus()).isEqualTo(REJECTED);
   }
 
+  @Test
+  void shouldMapPageWithLinks() throws GeneralSecurityException {
+    KeyPair keyPair = createKeyPair();
+    Certificate certificate = createCertificate(createX509Cert(keyPair, Instant.now(), Instant.now()));
+    CertificateQuery query = new CertificateQuery(
+      Certificate.Error.UNKNOWN, null, "hitchhiker org", CertificateQuery.SortBy.SUBJECT, true, 1, 1
+    );
+
+    CertificateCollectionDto dto = (CertificateCollectionDto) collectionMapper.map(
+      new CertificatePage(ImmutableList.of(certificate), 1, 3, 3), REJECTED, query
+    );
+
+    assertThat(dto.getPage()).isEqualTo(1);
+    assertThat(dto.getPageTotal()).isEqualTo(3);
+    assertThat(dto.getTotal()).isEqualTo(3);
+    assertThat(dto.getEmbedded().getItemsBy("chain")).hasSize(1);
+    assertThat(dto.getLinks().getLinkBy("self")).hasValueSatisfying(link ->
+      assertThat(link.getHref()).isEqualTo("scm/api/v2/ssl-context/rejected?page=1&pageSize=1&sortBy=subject&error=UNKNOWN&q=hitchhiker+org")
+    );
+    assertThat(dto.getLinks().getLinkBy("first")).hasValueSatisfying(link ->
+      assertThat(link.getHref()).startsWith("scm/api/v2/ssl-context/rejected?page=0&")
+    );
+    assertThat(dto.getLinks().getLinkBy("prev")).hasValueSatisfying(link ->
+      assertThat(link.getHref()).startsWith("scm/api/v2/ssl-context/rejected?page=0&")
+    );
+    assertThat(dto.getLinks().getLinkBy("next")).hasValueSatisfying(link ->
+      assertThat(link.getHref()).startsWith("scm/api/v2/ssl-context/rejected?page=2&")
+    );
+    assertThat(dto.getLinks().getLinkBy("last")).hasValueSatisfying(link ->
+      assertThat(link.getHref()).startsWith("scm/api/v2/ssl-context/rejected?page=2&")
+    );
+  }
+
+  @Test
+  void shouldNotAddPageLinksWithoutPageSize() throws GeneralSecurityException {
+    Certificate certificate = createCertificate(createX509Cert(createKeyPair(), Instant.now(), Instant.now()));
+
+    HalRepresentation dto = collectionMapper.map(
+      new CertificatePage(ImmutableList.of(certificate), 0, 1, 1), APPROVED, CertificateQuery.ALL
+    );
+
+    assertThat(dto.getLinks().getLinkBy("self")).hasValueSatisfying(link ->
+      assertThat(link.getHref()).isEqualTo("scm/api/v2/ssl-context/approved")
+    );
+    assertThat(dto.getLinks().getLinkBy("next")).isEmpty();
+    assertThat(dto.getLinks().getLinkBy("first")).isEmpty();
+  }
+
   private Certificate createCertificate(X509Certificate cert) throws CertificateEncodingException {
     return new Certificate(cert.getEncoded(), Certificate.Error.UNKNOWN);
   }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import com.google.common.io.Resources;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CertificateDetailsCacheTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final CertificateDetailsCache cache = new CertificateDetailsCache(meterRegistry, 2);
+
+  @Test
+  @SuppressWarnings("UnstableApiUsage")
+  void shouldCacheDetailsByFingerprint() throws IOException, CertificateException {
+    byte[] encoded = Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-001"));
+
+    CertificateDetailsCache.Details details = cache.get(new Certificate(encoded, Certificate.Error.UNKNOWN));
+    CertificateDetailsCache.Details cached = cache.get(new Certificate(encoded, Certificate.Error.EXPIRED));
+
+    assertThat(cached).isSameAs(details);
+    assertThat(details.getSubjectDN()).isEqualTo("C=c, ST=il, L=L, O=hitchhiker.org, CN=localhost");
+    assertThat(details.getSignAlg()).isEqualTo("SHA256withRSA");
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(gets("hit")).isEqualTo(1);
+    assertThat(gets("miss")).isEqualTo(1);
+  }
+
+  @Test
+  @SuppressWarnings("UnstableApiUsage")
+  void shouldCacheChainByFingerprint() throws IOException, CertificateException {
+    byte[] parentEncoded = Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-001"));
+    byte[] encoded = Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-002-expired"));
+    Certificate parent = new Certificate(parentEncoded, Certificate.Error.UNKNOWN);
+
+    List<CertificateDetailsCache.Details> chain = cache.getChain(new Certificate(parent, encoded, Certificate.Error.UNKNOWN));
+    List<CertificateDetailsCache.Details> cached = cache.getChain(new Certificate(parent, encoded, Certificate.Error.EXPIRED));
+
+    assertThat(cached).isSameAs(chain);
+    assertThat(chain).extracting(CertificateDetailsCache.Details::getFingerprint).containsExactly(parent.getFingerprint());
+    assertThat(chainGets("hit")).isEqualTo(1);
+    assertThat(chainGets("miss")).isEqualTo(1);
+  }
+
+  @Test
+  @SuppressWarnings("UnstableApiUsage")
+  void shouldResolveReplacedChain() throws IOException, CertificateException {
+    byte[] parentEncoded = Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-001"));
+    byte[] encoded = Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-002-expired"));
+    Certificate parent = new Certificate(parentEncoded, Certificate.Error.UNKNOWN);
+
+    cache.getChain(new Certificate(parent, encoded, Certificate.Error.UNKNOWN));
+    List<CertificateDetailsCache.Details> replaced = cache.getChain(new Certificate(encoded, Certificate.Error.UNKNOWN));
+
+    assertThat(replaced).isEmpty();
+  }
+
+  @Test
+  void shouldFailForInvalidCertificate() {
+    Certificate certificate = new Certificate("hitchhiker".getBytes(), Certificate.Error.UNKNOWN);
+
+    assertThatThrownBy(() -> cache.get(certificate)).isInstanceOf(CertificateException.class);
+    assertThat(cache.size()).isZero();
+  }
+
+  private double chainGets(String result) {
+    return meterRegistry.get("cache.gets")
+      .tag("cache", "sslcontext.certificate.chains")
+      .tag("result", result)
+      .functionCounter()
+      .count();
+  }
+
+  private double gets(String result) {
+    FunctionCounter counter = meterRegistry.get("cache.gets")
+      .tag("cache", "sslcontext.certificate.details")
+      .tag("result", result)
+      .functionCounter();
+    return counter.count();
+  }
+}
@@ -18,6 +18,7 @@ package com.cloudogu.sslcontext;
 
 import com.google.common.io.Resources;
 import com.google.inject.util.Providers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.github.sdorra.jse.ShiroExtension;
 import org.github.sdorra.jse.SubjectAware;
@@ -51,6 +52,7 @@ class CertificateMapperTest {
     ScmPathInfoStore scmPathInfoStore = new ScmPathInfoStore();
     scmPathInfoStore.set(pathInfo);
     mapper.scmPathInfoStore = Providers.of(scmPathInfoStore);
+    mapper.detailsCache = new CertificateDetailsCache(new SimpleMeterRegistry());
   }
 
   @Test
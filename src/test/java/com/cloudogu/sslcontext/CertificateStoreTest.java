@@ -16,6 +16,8 @@
 
 package com.cloudogu.sslcontext;
 
+import com.google.common.io.Resources;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.shiro.authz.AuthorizationException;
 import org.github.sdorra.jse.ShiroExtension;
 import org.github.sdorra.jse.SubjectAware;
@@ -28,15 +30,35 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import sonia.scm.store.InMemoryByteDataStoreFactory;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
 import static com.cloudogu.sslcontext.Certificate.Error.EXPIRED;
 import static com.cloudogu.sslcontext.Certificate.Error.UNKNOWN;
 import static com.cloudogu.sslcontext.Certificate.Status.APPROVED;
 import static com.cloudogu.sslcontext.Certificate.Status.REJECTED;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith({ShiroExtension.class, MockitoExtension.class})
 class CertificateStoreTest {
@@ -44,11 +66,16 @@ class CertificateStoreTest {
   @Mock
   private TrustedCertificatesStore trustedCertificatesStore;
 
+  private final InMemoryBlobStore contentStore = new InMemoryBlobStore();
+  private final InMemoryBlobStoreFactory blobStoreFactory = new InMemoryBlobStoreFactory(contentStore);
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
   private CertificateStore certificateStore;
 
   @BeforeEach
   void initStore() {
-    certificateStore = new CertificateStore(new InMemoryByteDataStoreFactory(), trustedCertificatesStore);
+    certificateStore = new CertificateStore(new InMemoryByteDataStoreFactory(), blobStoreFactory, trustedCertificatesStore, meterRegistry);
   }
 
   @Nested
@@ -87,6 +114,122 @@ class CertificateStoreTest {
       assertThat(certificateStore.getAllRejected().get(0).getFingerprint()).isEqualTo("6ea1ec02523c727c41cb95ee43b4eb14ee7905ea");
     }
 
+    @Test
+    void shouldRemoveCertsOfReplacedChain() {
+      Certificate oldParent = new Certificate("old intermediate".getBytes(), UNKNOWN);
+      Certificate newParent = new Certificate("new intermediate".getBytes(), UNKNOWN);
+      certificateStore.put(new Certificate(oldParent, "marvin".getBytes(), UNKNOWN));
+
+      certificateStore.put(new Certificate(newParent, "marvin".getBytes(), UNKNOWN));
+
+      assertThat(contentStore.getOptional(oldParent.getFingerprint())).isEmpty();
+      assertThat(contentStore.getOptional(newParent.getFingerprint())).isPresent();
+      assertThat(contentStore.getAll()).hasSize(2);
+      assertThat(certificateStore.getAllRejected().get(0).getParent().getFingerprint()).isEqualTo(newParent.getFingerprint());
+    }
+
+    @Test
+    void shouldKeepCertsOfReplacedChainWhichAreStillReferenced() {
+      Certificate oldParent = new Certificate("old intermediate".getBytes(), UNKNOWN);
+      certificateStore.put(new Certificate(oldParent, "marvin".getBytes(), UNKNOWN));
+      certificateStore.put(new Certificate(oldParent, "trillian".getBytes(), UNKNOWN));
+
+      certificateStore.put(new Certificate("marvin".getBytes(), UNKNOWN));
+
+      assertThat(contentStore.getOptional(oldParent.getFingerprint())).isPresent();
+      assertThat(contentStore.getAll()).hasSize(3);
+    }
+
+    @Test
+    void shouldPageRejectedCerts() {
+      for (int i = 0; i < 5; i++) {
+        certificateStore.put(new Certificate(("hitchhiker-" + i).getBytes(), UNKNOWN));
+      }
+
+      CertificatePage lastPage = certificateStore.getRejected(query(null, null, CertificateQuery.SortBy.TIMESTAMP, 2, 2));
+
+      assertThat(lastPage.getCertificates()).hasSize(1);
+      assertThat(lastPage.getPage()).isEqualTo(2);
+      assertThat(lastPage.getPageTotal()).isEqualTo(3);
+      assertThat(lastPage.getTotal()).isEqualTo(5);
+
+      Set<String> fingerprints = new HashSet<>();
+      for (int page = 0; page < 3; page++) {
+        certificateStore.getRejected(query(null, null, CertificateQuery.SortBy.TIMESTAMP, page, 2))
+          .getCertificates()
+          .forEach(certificate -> fingerprints.add(certificate.getFingerprint()));
+      }
+      assertThat(fingerprints).hasSize(5);
+    }
+
+    @Test
+    @SuppressWarnings("UnstableApiUsage")
+    void shouldFilterRejectedCerts() throws IOException {
+      Certificate parsable = new Certificate(Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-001")), UNKNOWN);
+      certificateStore.put(parsable);
+      certificateStore.put(new Certificate("hitchhiker".getBytes(), EXPIRED));
+      certificateStore.put(new Certificate("marvin".getBytes(), UNKNOWN));
+
+      assertThat(certificateStore.getRejected(query(EXPIRED, null, CertificateQuery.SortBy.TIMESTAMP, 0, 0)).getCertificates())
+        .extracting(Certificate::getError)
+        .containsExactly(EXPIRED);
+      assertThat(certificateStore.getRejected(query(null, "Hitchhiker.ORG", CertificateQuery.SortBy.TIMESTAMP, 0, 0)).getCertificates())
+        .extracting(Certificate::getFingerprint)
+        .containsExactly(parsable.getFingerprint());
+    }
+
+    @Test
+    void shouldSortRejectedCertsByExpiration() throws GeneralSecurityException {
+      KeyPair keyPair = createKeyPair();
+      Instant now = Instant.now();
+      Certificate first = createCertificate(keyPair, now.plus(1, ChronoUnit.DAYS));
+      Certificate third = createCertificate(keyPair, now.plus(3, ChronoUnit.DAYS));
+      Certificate second = createCertificate(keyPair, now.plus(2, ChronoUnit.DAYS));
+      certificateStore.put(first);
+      certificateStore.put(third);
+      certificateStore.put(second);
+
+      CertificatePage page = certificateStore.getRejected(
+        new CertificateQuery(null, null, null, CertificateQuery.SortBy.NOT_AFTER, false, 0, 0)
+      );
+
+      assertThat(page.getCertificates())
+        .extracting(Certificate::getFingerprint)
+        .containsExactly(first.getFingerprint(), second.getFingerprint(), third.getFingerprint());
+    }
+
+    @Test
+    void shouldStreamRejectedCerts() {
+      for (int i = 0; i < 5; i++) {
+        certificateStore.put(new Certificate(("hitchhiker-" + i).getBytes(), UNKNOWN));
+      }
+
+      List<Certificate> page = certificateStore.getRejected(query(null, null, CertificateQuery.SortBy.TIMESTAMP, 1, 2)).getCertificates();
+
+      assertThat(certificateStore.streamRejected(query(null, null, CertificateQuery.SortBy.TIMESTAMP, 1, 2)))
+        .extracting(Certificate::getFingerprint)
+        .containsExactlyElementsOf(page.stream().map(Certificate::getFingerprint).collect(Collectors.toList()));
+      assertThat(certificateStore.streamRejected(CertificateQuery.ALL)).hasSize(5);
+    }
+
+    @Test
+    void shouldUpdateIndexOnChanges() {
+      certificateStore.put(new Certificate("hitchhiker".getBytes(), UNKNOWN));
+      assertThat(certificateStore.getRejected(CertificateQuery.ALL).getTotal()).isEqualTo(1);
+
+      certificateStore.put(new Certificate("marvin".getBytes(), UNKNOWN));
+
+      assertThat(certificateStore.getRejected(CertificateQuery.ALL).getTotal()).isEqualTo(2);
+    }
+
+    private CertificateQuery query(Certificate.Error error, String search, CertificateQuery.SortBy sortBy, int page, int pageSize) {
+      return new CertificateQuery(error, null, search, sortBy, true, page, pageSize);
+    }
+
+    private Certificate createCertificate(KeyPair keyPair, Instant notAfter) throws GeneralSecurityException {
+      return new Certificate(createX509Cert(keyPair, Instant.now(), notAfter).getEncoded(), UNKNOWN);
+    }
+
     @Test
     void shouldUploadCert() {
       byte[] encodedCert = "hitchhiker".getBytes();
@@ -113,6 +256,28 @@ class CertificateStoreTest {
       assertThat(approvedCerts.get(0)).usingRecursiveComparison().isEqualTo(certificate);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldUploadCertsWithSingleTrustStoreChange() {
+      TrustedCertificatesStore.Transaction transaction = mock(TrustedCertificatesStore.Transaction.class);
+      doAnswer(invocation -> {
+        invocation.getArgument(0, Consumer.class).accept(transaction);
+        return null;
+      }).when(trustedCertificatesStore).batch(any());
+      Certificate first = new Certificate("hitchhiker".getBytes(), UNKNOWN);
+      Certificate second = new Certificate("heart of gold".getBytes(), UNKNOWN);
+
+      certificateStore.upload(List.of(first, second));
+
+      verify(trustedCertificatesStore, times(1)).batch(any());
+      verify(transaction).add(first);
+      verify(transaction).add(second);
+      assertThat(certificateStore.getAllApproved())
+        .extracting(Certificate::getFingerprint)
+        .containsExactlyInAnyOrder(first.getFingerprint(), second.getFingerprint());
+      assertThat(certificateStore.getAllApproved()).allMatch(Certificate::isUploaded);
+    }
+
     @Test
     void shouldApproveAndRejectCert() {
       byte[] encodedCert = "hitchhiker".getBytes();
@@ -133,6 +298,216 @@ class CertificateStoreTest {
       assertThat(certificateStore.getAllApproved()).isEmpty();
     }
 
+    @Test
+    void shouldCountStoredCerts() {
+      Certificate marvin = new Certificate("marvin".getBytes(), UNKNOWN);
+      Certificate trillian = new Certificate("trillian".getBytes(), UNKNOWN);
+      certificateStore.put(marvin);
+      certificateStore.put(trillian);
+
+      certificateStore.approve(marvin.getFingerprint(), marvin.getFingerprint());
+
+      assertThat(meterRegistry.get("sslcontext.certificates").tag("status", "rejected").gauge().value()).isEqualTo(1);
+      assertThat(meterRegistry.get("sslcontext.certificates").tag("status", "approved").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldIncreaseVersionOnChanges() {
+      Certificate certificate = new Certificate("hitchhiker".getBytes(), UNKNOWN);
+      long rejectedVersion = certificateStore.getRejectedVersion();
+      long approvedVersion = certificateStore.getApprovedVersion();
+
+      certificateStore.put(certificate);
+      assertThat(certificateStore.getRejectedVersion()).isGreaterThan(rejectedVersion);
+      assertThat(certificateStore.getApprovedVersion()).isEqualTo(approvedVersion);
+
+      rejectedVersion = certificateStore.getRejectedVersion();
+      certificateStore.approve(certificate.getFingerprint(), certificate.getFingerprint());
+      assertThat(certificateStore.getRejectedVersion()).isGreaterThan(rejectedVersion);
+      assertThat(certificateStore.getApprovedVersion()).isGreaterThan(approvedVersion);
+
+      rejectedVersion = certificateStore.getRejectedVersion();
+      certificateStore.removeRejected("unknown");
+      assertThat(certificateStore.getRejectedVersion()).isEqualTo(rejectedVersion);
+    }
+
+    @Test
+    void shouldRemoveRejectedCertFromIndex() {
+      Certificate certificate = new Certificate("hitchhiker".getBytes(), UNKNOWN);
+      certificateStore.put(certificate);
+      assertThat(certificateStore.getRejected(CertificateQuery.ALL).getTotal()).isEqualTo(1);
+
+      certificateStore.approve(certificate.getFingerprint(), certificate.getFingerprint());
+
+      assertThat(certificateStore.getRejected(CertificateQuery.ALL).getTotal()).isZero();
+      assertThat(certificateStore.getApproved(CertificateQuery.ALL).getCertificates())
+        .extracting(Certificate::getFingerprint)
+        .containsExactly(certificate.getFingerprint());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldApplyBatchWithOneTrustStoreChange() {
+      TrustedCertificatesStore.Transaction transaction = mock(TrustedCertificatesStore.Transaction.class);
+      doAnswer(invocation -> {
+        invocation.getArgument(0, Consumer.class).accept(transaction);
+        return null;
+      }).when(trustedCertificatesStore).batch(any());
+
+      Certificate parent = new Certificate("intermediate".getBytes(), UNKNOWN);
+      Certificate marvin = new Certificate(parent, "marvin".getBytes(), UNKNOWN);
+      Certificate trillian = new Certificate(parent, "trillian".getBytes(), UNKNOWN);
+      Certificate arthur = new Certificate("arthur".getBytes(), UNKNOWN);
+      certificateStore.put(marvin);
+      certificateStore.put(trillian);
+      certificateStore.put(arthur);
+
+      certificateStore.batch(changes -> {
+        changes.approve(marvin.getFingerprint(), marvin.getFingerprint());
+        changes.approve(trillian.getFingerprint(), parent.getFingerprint());
+        changes.removeRejected(arthur.getFingerprint());
+      });
+
+      verify(trustedCertificatesStore).batch(any());
+      verify(trustedCertificatesStore, never()).add(any());
+      verify(transaction, times(2)).add(any());
+      assertThat(certificateStore.getAllApproved())
+        .extracting(Certificate::getFingerprint)
+        .containsExactlyInAnyOrder(marvin.getFingerprint(), parent.getFingerprint());
+      assertThat(certificateStore.getAllRejected())
+        .extracting(Certificate::getFingerprint)
+        .containsExactly(trillian.getFingerprint());
+      assertThat(contentStore.getAll()).hasSize(3);
+    }
+
+    @Test
+    void shouldNotWriteAnythingIfBatchFails() {
+      Certificate marvin = new Certificate("marvin".getBytes(), UNKNOWN);
+      Certificate arthur = new Certificate("arthur".getBytes(), UNKNOWN);
+      certificateStore.put(marvin);
+      certificateStore.put(arthur);
+
+      assertThrows(IllegalStateException.class, () -> certificateStore.batch(changes -> {
+        changes.approve(marvin.getFingerprint(), marvin.getFingerprint());
+        changes.removeRejected(arthur.getFingerprint());
+        throw new IllegalStateException("invalid operation");
+      }));
+
+      verify(trustedCertificatesStore, never()).batch(any());
+      assertThat(certificateStore.getAllApproved()).isEmpty();
+      assertThat(certificateStore.getAllRejected())
+        .extracting(Certificate::getFingerprint)
+        .containsExactlyInAnyOrder(marvin.getFingerprint(), arthur.getFingerprint());
+    }
+
+    @Test
+    void shouldNotChangeEntriesIfTrustStoreChangeFails() {
+      doThrow(new CertificateException("Could not modify stored trust store", new IOException("disk full")))
+        .when(trustedCertificatesStore).batch(any());
+      Certificate marvin = new Certificate("marvin".getBytes(), UNKNOWN);
+      Certificate arthur = new Certificate("arthur".getBytes(), UNKNOWN);
+      certificateStore.put(marvin);
+      certificateStore.put(arthur);
+      long rejectedVersion = certificateStore.getRejectedVersion();
+
+      assertThrows(CertificateException.class, () -> certificateStore.batch(changes -> {
+        changes.approve(marvin.getFingerprint(), marvin.getFingerprint());
+        changes.removeRejected(arthur.getFingerprint());
+      }));
+
+      assertThat(certificateStore.getAllApproved()).isEmpty();
+      assertThat(certificateStore.getAllRejected())
+        .extracting(Certificate::getFingerprint)
+        .containsExactlyInAnyOrder(marvin.getFingerprint(), arthur.getFingerprint());
+      assertThat(certificateStore.getRejectedVersion()).isEqualTo(rejectedVersion);
+      assertThat(contentStore.getAll()).hasSize(2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldImportOnlyCertsWhichAreNotTrusted() throws GeneralSecurityException, IOException {
+      TrustedCertificatesStore.Transaction transaction = mock(TrustedCertificatesStore.Transaction.class);
+      doAnswer(invocation -> {
+        invocation.getArgument(0, Consumer.class).accept(transaction);
+        return null;
+      }).when(trustedCertificatesStore).batch(any());
+      Certificate trusted = new Certificate("hitchhiker".getBytes(), UNKNOWN);
+      Certificate missing = new Certificate("heart of gold".getBytes(), UNKNOWN);
+      KeyStore keyStore = KeyStore.getInstance("PKCS12");
+      keyStore.load(null, null);
+      keyStore.setCertificateEntry(
+        trusted.getFingerprint(), createX509Cert(createKeyPair(), Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS))
+      );
+      when(trustedCertificatesStore.getKeyStore()).thenReturn(keyStore);
+
+      int imported = certificateStore.importTrusted(List.of(trusted, missing));
+
+      assertThat(imported).isEqualTo(1);
+      verify(trustedCertificatesStore, times(1)).batch(any());
+      verify(transaction).add(missing);
+      verify(transaction, never()).add(trusted);
+    }
+
+    @Test
+    void shouldNotChangeTrustStoreIfAllCertsAreTrusted() throws GeneralSecurityException, IOException {
+      KeyStore keyStore = KeyStore.getInstance("PKCS12");
+      keyStore.load(null, null);
+      when(trustedCertificatesStore.getKeyStore()).thenReturn(keyStore);
+
+      int imported = certificateStore.importTrusted(List.of());
+
+      assertThat(imported).isZero();
+      verify(trustedCertificatesStore, never()).batch(any());
+    }
+
+    @Test
+    void shouldReadAllCertsWithSmallCache() {
+      certificateStore = new CertificateStore(new InMemoryByteDataStoreFactory(), blobStoreFactory, trustedCertificatesStore, new SimpleMeterRegistry(), 1);
+      Certificate marvin = new Certificate("marvin".getBytes(), UNKNOWN);
+      Certificate trillian = new Certificate("trillian".getBytes(), UNKNOWN);
+      certificateStore.put(marvin);
+      certificateStore.put(trillian);
+
+      certificateStore.approve(marvin.getFingerprint(), marvin.getFingerprint());
+
+      assertThat(certificateStore.getAllApproved())
+        .extracting(Certificate::getFingerprint)
+        .containsExactly(marvin.getFingerprint());
+      assertThat(certificateStore.getAllRejected())
+        .extracting(Certificate::getFingerprint)
+        .containsExactly(trillian.getFingerprint());
+    }
+
+    @Test
+    void shouldFindChainsContainingIntermediate() {
+      Certificate parent = new Certificate("intermediate".getBytes(), UNKNOWN);
+      Certificate marvin = new Certificate(parent, "marvin".getBytes(), UNKNOWN);
+      Certificate trillian = new Certificate(parent, "trillian".getBytes(), UNKNOWN);
+      certificateStore.put(marvin);
+      certificateStore.put(trillian);
+
+      certificateStore.approve(trillian.getFingerprint(), parent.getFingerprint());
+
+      assertThat(certificateStore.findChains(parent.getFingerprint()))
+        .extracting(ChainIndex.Location::getStatus, ChainIndex.Location::getStoredId, ChainIndex.Location::getPosition)
+        .containsExactlyInAnyOrder(
+          tuple(REJECTED, marvin.getFingerprint(), 1),
+          tuple(REJECTED, trillian.getFingerprint(), 1),
+          tuple(APPROVED, parent.getFingerprint(), 0)
+        );
+    }
+
+    @Test
+    void shouldIgnoreUnknownChainElement() {
+      Certificate certificate = new Certificate("hitchhiker".getBytes(), UNKNOWN);
+      certificateStore.put(certificate);
+
+      certificateStore.approve(certificate.getFingerprint(), "unknown");
+
+      assertThat(certificateStore.getAllApproved()).isEmpty();
+      verify(trustedCertificatesStore, never()).add(any());
+    }
+
     @Test
     void shouldRemoveRejectedCert() {
       byte[] encodedCert = "hitchhiker".getBytes();
@@ -145,6 +520,53 @@ class CertificateStoreTest {
 
       assertThat(certificateStore.getAllRejected()).isEmpty();
     }
+
+    @Test
+    void shouldStoreSharedChainCertificateOnce() {
+      Certificate parent = new Certificate("intermediate".getBytes(), UNKNOWN);
+      certificateStore.put(new Certificate(parent, "marvin".getBytes(), UNKNOWN));
+      certificateStore.put(new Certificate(parent, "trillian".getBytes(), UNKNOWN));
+
+      assertThat(contentStore.getAll()).hasSize(3);
+      List<Certificate> rejected = certificateStore.getAllRejected();
+      assertThat(rejected).hasSize(2);
+      assertThat(rejected).allSatisfy(certificate -> {
+        assertThat(certificate.getParent()).isNotNull();
+        assertThat(certificate.getParent().getFingerprint()).isEqualTo(parent.getFingerprint());
+        assertThat(certificate.getParent().getEncoded()).isEqualTo("intermediate".getBytes());
+        assertThat(certificate.getParent().getStatus()).isEqualTo(REJECTED);
+      });
+    }
+
+    @Test
+    void shouldRemoveUnreferencedCertificates() {
+      Certificate parent = new Certificate("intermediate".getBytes(), UNKNOWN);
+      Certificate marvin = new Certificate(parent, "marvin".getBytes(), UNKNOWN);
+      Certificate trillian = new Certificate(parent, "trillian".getBytes(), UNKNOWN);
+      certificateStore.put(marvin);
+      certificateStore.put(trillian);
+
+      certificateStore.removeRejected(marvin.getFingerprint());
+      assertThat(contentStore.getAll()).hasSize(2);
+
+      certificateStore.removeRejected(trillian.getFingerprint());
+      assertThat(contentStore.getAll()).isEmpty();
+    }
+
+    @Test
+    void shouldKeepChainOfApprovedCertificate() {
+      Certificate parent = new Certificate("intermediate".getBytes(), UNKNOWN);
+      Certificate certificate = new Certificate(parent, "marvin".getBytes(), UNKNOWN);
+      certificateStore.put(certificate);
+
+      certificateStore.approve(certificate.getFingerprint(), certificate.getFingerprint());
+
+      assertThat(certificateStore.getAllRejected()).isEmpty();
+      Certificate approved = certificateStore.getAllApproved().get(0);
+      assertThat(approved.getStatus()).isEqualTo(APPROVED);
+      assertThat(approved.getParent().getEncoded()).isEqualTo("intermediate".getBytes());
+      assertThat(contentStore.getAll()).hasSize(2);
+    }
   }
 
   @Nested
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.github.sdorra.jse.ShiroExtension;
+import org.github.sdorra.jse.SubjectAware;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.store.DataStore;
+import sonia.scm.store.InMemoryByteDataStoreFactory;
+
+import java.util.List;
+
+import static com.cloudogu.sslcontext.Certificate.Error.EXPIRED;
+import static com.cloudogu.sslcontext.Certificate.Error.UNKNOWN;
+import static com.cloudogu.sslcontext.Certificate.Status.APPROVED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith({ShiroExtension.class, MockitoExtension.class})
+@SubjectAware(value = "marvin", permissions = "sslContext:read")
+class CertificateStoreUpdateStepTest {
+
+  @Mock
+  private TrustedCertificatesStore trustedCertificatesStore;
+
+  private final InMemoryByteDataStoreFactory dataStoreFactory = new InMemoryByteDataStoreFactory();
+  private final InMemoryBlobStore contentStore = new InMemoryBlobStore();
+
+  private CertificateStore certificateStore;
+  private CertificateStoreUpdateStep updateStep;
+
+  @BeforeEach
+  void setUp() {
+    certificateStore = new CertificateStore(dataStoreFactory, new InMemoryBlobStoreFactory(contentStore), trustedCertificatesStore, new SimpleMeterRegistry());
+    updateStep = new CertificateStoreUpdateStep(dataStoreFactory, certificateStore);
+  }
+
+  @Test
+  void shouldMigrateNestedChains() {
+    Certificate parent = new Certificate("intermediate".getBytes(), EXPIRED);
+    Certificate marvin = new Certificate(parent, "marvin".getBytes(), EXPIRED);
+    Certificate trillian = new Certificate(parent, "trillian".getBytes(), EXPIRED);
+    Certificate uploaded = new Certificate("arthur".getBytes(), UNKNOWN);
+    uploaded.setUploaded();
+    uploaded.approve();
+
+    DataStore<Certificate> rejected = legacyStore(CertificateStore.LEGACY_REJECTED_STORE_NAME);
+    rejected.put(marvin.getFingerprint(), marvin);
+    rejected.put(trillian.getFingerprint(), trillian);
+    DataStore<Certificate> approved = legacyStore(CertificateStore.LEGACY_APPROVED_STORE_NAME);
+    approved.put(uploaded.getFingerprint(), uploaded);
+
+    updateStep.doUpdate();
+
+    List<Certificate> migratedRejected = certificateStore.getAllRejected();
+    assertThat(migratedRejected).hasSize(2);
+    assertThat(migratedRejected).allSatisfy(certificate -> {
+      assertThat(certificate.getError()).isEqualTo(EXPIRED);
+      assertThat(certificate.getParent().getFingerprint()).isEqualTo(parent.getFingerprint());
+    });
+    List<Certificate> migratedApproved = certificateStore.getAllApproved();
+    assertThat(migratedApproved).hasSize(1);
+    assertThat(migratedApproved.get(0).getStatus()).isEqualTo(APPROVED);
+    assertThat(migratedApproved.get(0).isUploaded()).isTrue();
+
+    assertThat(contentStore.getAll()).hasSize(4);
+    assertThat(rejected.getAll()).isEmpty();
+    assertThat(approved.getAll()).isEmpty();
+  }
+
+  private DataStore<Certificate> legacyStore(String name) {
+    return dataStoreFactory.withType(Certificate.class).withName(name).build();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+package com.cloudogu.sslcontext;
+
+import com.google.common.io.Resources;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CertificateTest {
+
+  @Test
+  @SuppressWarnings("UnstableApiUsage")
+  void shouldParseEncodedCertificateOnlyOnce() throws IOException, CertificateException {
+    byte[] encoded = Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-001"));
+    Certificate certificate = new Certificate(encoded, Certificate.Error.UNKNOWN);
+
+    X509Certificate x509 = certificate.toX509();
+
+    assertThat(x509.getSubjectDN().getName()).isEqualTo("C=c, ST=il, L=L, O=hitchhiker.org, CN=localhost");
+    assertThat(certificate.toX509()).isSameAs(x509);
+  }
+
+  @Test
+  @SuppressWarnings("UnstableApiUsage")
+  void shouldParseCertificatesConcurrently() throws IOException {
+    byte[] encoded = Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-001"));
+
+    List<String> subjects = IntStream.range(0, 200).parallel()
+      .mapToObj(i -> {
+        try {
+          return new Certificate(encoded, Certificate.Error.UNKNOWN).toX509().getSubjectX500Principal().getName();
+        } catch (CertificateException e) {
+          throw new IllegalStateException(e);
+        }
+      })
+      .collect(Collectors.toList());
+
+    assertThat(subjects).hasSize(200).containsOnly("C=c,ST=il,L=L,O=hitchhiker.org,CN=localhost");
+  }
+
+  @Test
+  void shouldFailForInvalidCertificate() {
+    Certificate certificate = new Certificate(new byte[]{1, 2, 3}, Certificate.Error.UNKNOWN);
+
+    assertThatThrownBy(certificate::toX509).isInstanceOf(CertificateException.class);
+    assertThatThrownBy(certificate::toX509).isInstanceOf(CertificateException.class);
+  }
+}
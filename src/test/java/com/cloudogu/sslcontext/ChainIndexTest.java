@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.cloudogu.sslcontext.Certificate.Error.UNKNOWN;
+import static com.cloudogu.sslcontext.Certificate.Status.APPROVED;
+import static com.cloudogu.sslcontext.Certificate.Status.REJECTED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ChainIndexTest {
+
+  private final Map<Certificate.Status, Collection<CertificateEntry>> stored = new EnumMap<>(Certificate.Status.class);
+  private int loads = 0;
+
+  private final Certificate root = new Certificate("root".getBytes(), UNKNOWN);
+  private final Certificate intermediate = new Certificate(root, "intermediate".getBytes(), UNKNOWN);
+  private final Certificate marvin = new Certificate(intermediate, "marvin".getBytes(), UNKNOWN);
+  private final Certificate trillian = new Certificate(intermediate, "trillian".getBytes(), UNKNOWN);
+
+  private ChainIndex index;
+
+  @BeforeEach
+  void initIndex() {
+    stored.put(REJECTED, new ArrayList<>(List.of(new CertificateEntry(marvin))));
+    stored.put(APPROVED, new ArrayList<>(List.of(new CertificateEntry(trillian))));
+    index = new ChainIndex(status -> {
+      loads++;
+      return stored.get(status);
+    });
+  }
+
+  @Test
+  void shouldLoadStoresOnFirstUse() {
+    assertThat(index.contains(REJECTED, marvin.getFingerprint())).isTrue();
+    assertThat(index.contains(APPROVED, marvin.getFingerprint())).isFalse();
+    assertThat(index.contains(APPROVED, trillian.getFingerprint())).isTrue();
+
+    assertThat(loads).isEqualTo(2);
+  }
+
+  @Test
+  void shouldFindPositionInChain() {
+    assertThat(index.position(REJECTED, marvin.getFingerprint(), marvin.getFingerprint())).hasValue(0);
+    assertThat(index.position(REJECTED, marvin.getFingerprint(), intermediate.getFingerprint())).hasValue(1);
+    assertThat(index.position(REJECTED, marvin.getFingerprint(), root.getFingerprint())).hasValue(2);
+    assertThat(index.position(REJECTED, marvin.getFingerprint(), trillian.getFingerprint())).isEmpty();
+    assertThat(index.position(APPROVED, marvin.getFingerprint(), marvin.getFingerprint())).isEmpty();
+  }
+
+  @Test
+  void shouldFindChainsContainingIntermediate() {
+    List<ChainIndex.Location> locations = index.find(intermediate.getFingerprint());
+
+    assertThat(locations)
+      .extracting(ChainIndex.Location::getStatus, ChainIndex.Location::getStoredId, ChainIndex.Location::getPosition)
+      .containsExactlyInAnyOrder(
+        tuple(REJECTED, marvin.getFingerprint(), 1),
+        tuple(APPROVED, trillian.getFingerprint(), 1)
+      );
+  }
+
+  @Test
+  void shouldUpdateReferencesOnRemove() {
+    List<String> removed = index.remove(REJECTED, marvin.getFingerprint());
+
+    assertThat(removed).containsExactly(marvin.getFingerprint(), intermediate.getFingerprint(), root.getFingerprint());
+    assertThat(index.isReferenced(marvin.getFingerprint())).isFalse();
+    assertThat(index.isReferenced(intermediate.getFingerprint())).isTrue();
+    assertThat(index.find(intermediate.getFingerprint())).hasSize(1);
+    assertThat(index.remove(REJECTED, marvin.getFingerprint())).isEmpty();
+  }
+
+  @Test
+  void shouldReplaceChainOnPut() {
+    index.contains(REJECTED, marvin.getFingerprint());
+
+    index.put(REJECTED, new CertificateEntry(new Certificate("marvin".getBytes(), UNKNOWN)));
+
+    assertThat(index.position(REJECTED, marvin.getFingerprint(), intermediate.getFingerprint())).isEmpty();
+    assertThat(index.find(intermediate.getFingerprint())).hasSize(1);
+    assertThat(index.position(REJECTED, marvin.getFingerprint(), marvin.getFingerprint())).hasValue(0);
+  }
+
+  @Test
+  void shouldIgnorePutBeforeLoad() {
+    stored.get(APPROVED).add(new CertificateEntry(marvin));
+
+    index.put(APPROVED, new CertificateEntry(marvin));
+
+    assertThat(loads).isZero();
+    assertThat(index.find(marvin.getFingerprint())).hasSize(2);
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.github.sdorra.jse.ShiroExtension;
+import org.github.sdorra.jse.SubjectAware;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createCipherHandler;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyStore;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith({ShiroExtension.class, SecureEchoServerExtension.class})
+@SubjectAware(value = "trillian", permissions = "sslContext:read,write")
+class ClientIdentityKeyManagerTest {
+
+  private static final char[] PASSWORD = "secret".toCharArray();
+  private static final String[] RSA = {"RSA"};
+
+  private KeyPair keyPair;
+  private X509Certificate x509;
+  private ClientIdentityStore store;
+  private ClientIdentityKeyManager keyManager;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    keyPair = createKeyPair();
+    x509 = createX509Cert(keyPair, Instant.now().minus(1, ChronoUnit.MINUTES), Instant.now().plus(1, ChronoUnit.DAYS));
+    store = new ClientIdentityStore(new InMemoryBlobStoreFactory(), createCipherHandler());
+    keyManager = new ClientIdentityKeyManager(store);
+  }
+
+  @Test
+  void shouldChooseIdentityOfPeerHost() throws Exception {
+    store.put(identity("git.hitchhiker.org"));
+
+    String alias = keyManager.chooseEngineClientAlias(RSA, null, engine("git.hitchhiker.org"));
+
+    assertThat(alias).isEqualTo("git.hitchhiker.org/" + fingerprint(x509));
+    assertThat(keyManager.getPrivateKey(alias)).isEqualTo(keyPair.getPrivate());
+    assertThat(keyManager.getCertificateChain(alias)).containsExactly(x509);
+  }
+
+  @Test
+  void shouldNotResolveAliasOfReplacedIdentity() throws Exception {
+    store.put(identity("git.hitchhiker.org"));
+    String alias = keyManager.chooseEngineClientAlias(RSA, null, engine("git.hitchhiker.org"));
+
+    KeyPair otherKeyPair = createKeyPair();
+    X509Certificate other = createX509Cert(otherKeyPair, Instant.now().minus(1, ChronoUnit.MINUTES), Instant.now().plus(1, ChronoUnit.DAYS));
+    store.put(new ClientIdentity("git.hitchhiker.org", otherKeyPair.getPrivate(), new X509Certificate[]{other}));
+
+    assertThat(keyManager.getCertificateChain(alias)).isNull();
+    assertThat(keyManager.getPrivateKey(alias)).isNull();
+    assertThat(keyManager.getPrivateKey("git.hitchhiker.org")).isNull();
+    String replaced = keyManager.chooseEngineClientAlias(RSA, null, engine("git.hitchhiker.org"));
+    assertThat(keyManager.getPrivateKey(replaced)).isEqualTo(otherKeyPair.getPrivate());
+    assertThat(keyManager.getCertificateChain(replaced)).containsExactly(other);
+  }
+
+  @Test
+  void shouldChooseWildcardIdentity() throws Exception {
+    store.put(identity("*.hitchhiker.org"));
+
+    assertThat(keyManager.chooseEngineClientAlias(RSA, null, engine("git.hitchhiker.org"))).isEqualTo("*.hitchhiker.org/" + fingerprint(x509));
+    assertThat(keyManager.chooseEngineClientAlias(RSA, null, engine("vogon.org"))).isNull();
+  }
+
+  @Test
+  void shouldNotChooseIdentityForOtherKeyTypeOrIssuer() throws Exception {
+    store.put(identity("git.hitchhiker.org"));
+
+    assertThat(keyManager.chooseEngineClientAlias(new String[]{"EC"}, null, engine("git.hitchhiker.org"))).isNull();
+    Principal[] issuers = {new X500Principal("CN=Vogon")};
+    assertThat(keyManager.chooseEngineClientAlias(RSA, issuers, engine("git.hitchhiker.org"))).isNull();
+  }
+
+  @Test
+  void shouldNotChooseIdentityWithoutPeerHost() throws Exception {
+    store.put(identity("git.hitchhiker.org"));
+
+    assertThat(keyManager.chooseEngineClientAlias(RSA, null, SSLContext.getDefault().createSSLEngine())).isNull();
+  }
+
+  @Test
+  void shouldReturnAllUsableAliases() throws Exception {
+    assertThat(keyManager.getClientAliases("RSA", null)).isNull();
+
+    store.put(identity("git.hitchhiker.org"));
+    store.put(identity("*.hitchhiker.org"));
+
+    assertThat(keyManager.getClientAliases("RSA", null)).containsExactlyInAnyOrder(
+      "git.hitchhiker.org/" + fingerprint(x509), "*.hitchhiker.org/" + fingerprint(x509)
+    );
+    assertThat(keyManager.getClientAliases("EC", null)).isNull();
+    assertThat(keyManager.getServerAliases("RSA", null)).isNull();
+  }
+
+  @Test
+  void shouldPresentClientCertificate(EchoServer echoServer) throws Exception {
+    KeyStore clientTrustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    clientTrustStore.load(null, null);
+    clientTrustStore.setCertificateEntry("client", x509);
+    echoServer.start(createKeyStore(keyPair, x509, PASSWORD), PASSWORD, clientTrustStore);
+    store.put(identity("localhost"));
+
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(new KeyManager[]{keyManager}, new TrustManager[]{new AcceptingTrustManager()}, null);
+
+    assertThat(echoServer.handshake(context, true)).isTrue();
+  }
+
+  private ClientIdentity identity(String host) throws Exception {
+    return new ClientIdentity(host, keyPair.getPrivate(), new X509Certificate[]{x509});
+  }
+
+  private static String fingerprint(X509Certificate certificate) throws Exception {
+    return Certificate.createFingerprint(certificate.getEncoded());
+  }
+
+  private SSLEngine engine(String host) throws Exception {
+    return SSLContext.getDefault().createSSLEngine(host, 443);
+  }
+
+  private static class AcceptingTrustManager implements X509TrustManager {
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+      // the key manager is tested, not the trust of the server
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+      // the key manager is tested, not the trust of the server
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return new X509Certificate[0];
+    }
+  }
+}
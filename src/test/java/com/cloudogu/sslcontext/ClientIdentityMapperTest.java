@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.util.Providers;
+import de.otto.edison.hal.HalRepresentation;
+import org.github.sdorra.jse.ShiroExtension;
+import org.github.sdorra.jse.SubjectAware;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import sonia.scm.api.v2.resources.ScmPathInfoStore;
+
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(ShiroExtension.class)
+class ClientIdentityMapperTest {
+
+  private ClientIdentityMapper mapper;
+  private ClientIdentity identity;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    ScmPathInfoStore scmPathInfoStore = new ScmPathInfoStore();
+    scmPathInfoStore.set(() -> URI.create("scm/api/"));
+    mapper = new ClientIdentityMapper(Providers.of(scmPathInfoStore));
+
+    KeyPair keyPair = createKeyPair();
+    X509Certificate x509 = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+    identity = new ClientIdentity("*.hitchhiker.org", keyPair.getPrivate(), new X509Certificate[]{x509});
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
+  void shouldMapIdentities() {
+    HalRepresentation collection = mapper.map(ImmutableList.of(identity));
+
+    assertThat(collection.getLinks().getLinkBy("self")).hasValueSatisfying(
+      link -> assertThat(link.getHref()).isEqualTo("scm/api/v2/ssl-context/client-identities")
+    );
+    List<HalRepresentation> identities = collection.getEmbedded().getItemsBy("clientIdentities");
+    assertThat(identities).hasSize(1);
+
+    ClientIdentityDto dto = (ClientIdentityDto) identities.get(0);
+    assertThat(dto.getHost()).isEqualTo("*.hitchhiker.org");
+    assertThat(dto.getSubjectDN()).contains("CN=localhost");
+    assertThat(dto.getKeyAlgorithm()).isEqualTo("RSA");
+    assertThat(dto.getFingerprint()).isEqualTo(identity.getFingerprint());
+    assertThat(dto.getNotAfter()).isEqualTo(identity.getCertificate().getNotAfter().toInstant());
+    assertThat(dto.getLinks().getLinkBy("delete")).hasValueSatisfying(
+      link -> assertThat(link.getHref()).isEqualTo("scm/api/v2/ssl-context/client-identities/*.hitchhiker.org")
+    );
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read")
+  void shouldNotAppendDeleteLinkWithoutManagePermission() {
+    ClientIdentityDto dto = mapper.map(identity);
+
+    assertThat(dto.getLinks().getLinkBy("delete")).isEmpty();
+  }
+}
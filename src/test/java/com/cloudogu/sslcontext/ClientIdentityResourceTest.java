@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import de.otto.edison.hal.HalRepresentation;
+import org.github.sdorra.jse.ShiroExtension;
+import org.github.sdorra.jse.SubjectAware;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.web.RestDispatcher;
+
+import jakarta.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.net.URISyntaxException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyStore;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(ShiroExtension.class)
+@ExtendWith(MockitoExtension.class)
+@SubjectAware(value = "trillian", permissions = "sslContext:read,write")
+class ClientIdentityResourceTest {
+
+  private static final char[] PASSWORD = "secret".toCharArray();
+
+  @Mock
+  private ClientIdentityStore store;
+  @Mock
+  private ClientIdentityMapper mapper;
+
+  private RestDispatcher dispatcher;
+  private final MockHttpResponse response = new MockHttpResponse();
+
+  @BeforeEach
+  void initResource() {
+    dispatcher = new RestDispatcher();
+    dispatcher.addSingletonResource(new ClientIdentityResource(store, mapper));
+  }
+
+  @Test
+  void shouldGetIdentities() throws URISyntaxException {
+    when(store.getAll()).thenReturn(Collections.emptyList());
+    when(mapper.map(Collections.emptyList())).thenReturn(new HalRepresentation());
+
+    dispatcher.invoke(MockHttpRequest.get("/v2/ssl-context/client-identities"), response);
+
+    assertThat(response.getStatus()).isEqualTo(200);
+  }
+
+  @Test
+  void shouldStoreIdentity() throws Exception {
+    KeyPair keyPair = createKeyPair();
+    X509Certificate x509 = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+
+    MockHttpRequest request = MockHttpRequest
+      .put("/v2/ssl-context/client-identities/Git.Hitchhiker.org")
+      .header(SSLContextResource.PASSWORD_HEADER, "secret")
+      .content(file(createKeyStore(keyPair, x509, PASSWORD)))
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(204);
+    ArgumentCaptor<ClientIdentity> identity = ArgumentCaptor.forClass(ClientIdentity.class);
+    verify(store).put(identity.capture());
+    assertThat(identity.getValue().getHost()).isEqualTo("git.hitchhiker.org");
+    assertThat(identity.getValue().getCertificate()).isEqualTo(x509);
+  }
+
+  @Test
+  void shouldNotStoreIdentityForInvalidHost() throws Exception {
+    KeyPair keyPair = createKeyPair();
+    X509Certificate x509 = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+
+    MockHttpRequest request = MockHttpRequest
+      .put("/v2/ssl-context/client-identities/git.*.org")
+      .header(SSLContextResource.PASSWORD_HEADER, "secret")
+      .content(file(createKeyStore(keyPair, x509, PASSWORD)))
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).put(any());
+  }
+
+  @Test
+  void shouldNotStoreKeyStoreWithoutPrivateKey() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("PKCS12");
+    keyStore.load(null, null);
+    keyStore.setCertificateEntry("one", createX509Cert(createKeyPair(), Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS)));
+
+    MockHttpRequest request = MockHttpRequest
+      .put("/v2/ssl-context/client-identities/git.hitchhiker.org")
+      .header(SSLContextResource.PASSWORD_HEADER, "secret")
+      .content(file(keyStore))
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).put(any());
+  }
+
+  @Test
+  void shouldNotStoreInvalidFile() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .put("/v2/ssl-context/client-identities/git.hitchhiker.org")
+      .header(SSLContextResource.PASSWORD_HEADER, "secret")
+      .content("hitchhiker".getBytes())
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).put(any());
+  }
+
+  @Test
+  void shouldNotStoreIdentityWithoutPassword() throws Exception {
+    KeyPair keyPair = createKeyPair();
+    X509Certificate x509 = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+
+    MockHttpRequest request = MockHttpRequest
+      .put("/v2/ssl-context/client-identities/git.hitchhiker.org?password=secret")
+      .content(file(createKeyStore(keyPair, x509, PASSWORD)))
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).put(any());
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read")
+  void shouldNotReadUploadWithoutManagePermission() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .put("/v2/ssl-context/client-identities/git.hitchhiker.org")
+      .content("hitchhiker".getBytes())
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(403);
+    verify(store, never()).put(any());
+  }
+
+  @Test
+  void shouldRemoveIdentity() throws URISyntaxException {
+    when(store.remove("*.hitchhiker.org")).thenReturn(true);
+
+    dispatcher.invoke(MockHttpRequest.delete("/v2/ssl-context/client-identities/*.Hitchhiker.org"), response);
+
+    assertThat(response.getStatus()).isEqualTo(204);
+    verify(store).remove("*.hitchhiker.org");
+  }
+
+  @Test
+  void shouldNotRemoveUnknownIdentity() throws URISyntaxException {
+    dispatcher.invoke(MockHttpRequest.delete("/v2/ssl-context/client-identities/git.hitchhiker.org"), response);
+
+    assertThat(response.getStatus()).isEqualTo(404);
+  }
+
+  private byte[] file(KeyStore keyStore) throws Exception {
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    keyStore.store(file, PASSWORD);
+    return file.toByteArray();
+  }
+}
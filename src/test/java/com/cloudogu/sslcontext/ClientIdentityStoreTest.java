@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.apache.shiro.authz.AuthorizationException;
+import org.github.sdorra.jse.ShiroExtension;
+import org.github.sdorra.jse.SubjectAware;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import sonia.scm.security.CipherHandler;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createCipherHandler;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(ShiroExtension.class)
+class ClientIdentityStoreTest {
+
+  private final InMemoryBlobStore blobStore = new InMemoryBlobStore();
+  private final InMemoryBlobStoreFactory blobStoreFactory = new InMemoryBlobStoreFactory(blobStore);
+  private final CipherHandler cipherHandler = createCipherHandler();
+
+  private KeyPair keyPair;
+  private X509Certificate x509;
+  private ClientIdentityStore store;
+
+  @BeforeEach
+  void setUp() throws GeneralSecurityException {
+    keyPair = createKeyPair();
+    x509 = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+    store = new ClientIdentityStore(blobStoreFactory, cipherHandler);
+  }
+
+  @Nested
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
+  class WithManagePermission {
+
+    @Test
+    void shouldStoreIdentity() throws Exception {
+      store.put(identity("git.hitchhiker.org"));
+
+      assertThat(store.getAll()).extracting(ClientIdentity::getHost).containsExactly("git.hitchhiker.org");
+      assertThat(store.get("git.hitchhiker.org")).hasValueSatisfying(
+        identity -> assertThat(identity.getCertificate()).isEqualTo(x509)
+      );
+    }
+
+    @Test
+    void shouldReadStoredIdentities() throws Exception {
+      store.put(identity("git.hitchhiker.org"));
+      store.put(identity("*.hitchhiker.org"));
+
+      ClientIdentityStore reloaded = new ClientIdentityStore(blobStoreFactory, cipherHandler);
+
+      assertThat(reloaded.getAll()).extracting(ClientIdentity::getHost).containsExactly("*.hitchhiker.org", "git.hitchhiker.org");
+      assertThat(reloaded.get("git.hitchhiker.org")).hasValueSatisfying(identity -> {
+        assertThat(identity.getPrivateKey()).isEqualTo(keyPair.getPrivate());
+        assertThat(identity.getChain()).containsExactly(x509);
+      });
+    }
+
+    @Test
+    void shouldStoreIdentityEncrypted() throws Exception {
+      store.put(identity("git.hitchhiker.org"));
+
+      assertThat(blobStore.getAll()).hasSize(1);
+      try (InputStream input = blobStore.getAll().get(0).getInputStream()) {
+        assertThat(new String(input.readAllBytes(), StandardCharsets.US_ASCII)).startsWith("encrypted:");
+      }
+    }
+
+    @Test
+    void shouldSkipIdentitiesEncryptedByOtherServer() throws Exception {
+      store.put(identity("git.hitchhiker.org"));
+      try (OutputStream output = blobStore.create("foreign").getOutputStream()) {
+        output.write("foreign:secret".getBytes(StandardCharsets.US_ASCII));
+      }
+
+      ClientIdentityStore reloaded = new ClientIdentityStore(blobStoreFactory, cipherHandler);
+
+      assertThat(reloaded.getAll()).extracting(ClientIdentity::getHost).containsExactly("git.hitchhiker.org");
+    }
+
+    @Test
+    void shouldSkipUnreadableIdentities() throws Exception {
+      store.put(identity("git.hitchhiker.org"));
+      try (OutputStream output = blobStore.create("broken").getOutputStream()) {
+        output.write("hitchhiker".getBytes(StandardCharsets.UTF_8));
+      }
+
+      ClientIdentityStore reloaded = new ClientIdentityStore(blobStoreFactory, cipherHandler);
+
+      assertThat(reloaded.getAll()).extracting(ClientIdentity::getHost).containsExactly("git.hitchhiker.org");
+    }
+
+    @Test
+    void shouldReplaceIdentityOfSameHost() throws Exception {
+      store.put(identity("git.hitchhiker.org"));
+      KeyPair otherKeyPair = createKeyPair();
+      X509Certificate other = createX509Cert(otherKeyPair, Instant.now(), Instant.now().plus(2, ChronoUnit.DAYS));
+      store.put(new ClientIdentity("git.hitchhiker.org", otherKeyPair.getPrivate(), new X509Certificate[]{other}));
+
+      assertThat(store.getAll()).hasSize(1);
+      assertThat(new ClientIdentityStore(blobStoreFactory, cipherHandler).get("git.hitchhiker.org")).hasValueSatisfying(
+        identity -> assertThat(identity.getCertificate()).isEqualTo(other)
+      );
+    }
+
+    @Test
+    void shouldRemoveIdentity() throws Exception {
+      store.put(identity("git.hitchhiker.org"));
+
+      assertThat(store.remove("git.hitchhiker.org")).isTrue();
+      assertThat(store.remove("git.hitchhiker.org")).isFalse();
+
+      assertThat(store.getAll()).isEmpty();
+      assertThat(new ClientIdentityStore(blobStoreFactory, cipherHandler).getAll()).isEmpty();
+    }
+
+    @Test
+    void shouldPreferIdentityOfHostOverWildcard() throws Exception {
+      store.put(identity("*.hitchhiker.org"));
+      store.put(identity("git.hitchhiker.org"));
+
+      assertThat(store.select("GIT.hitchhiker.org")).map(ClientIdentity::getHost).hasValue("git.hitchhiker.org");
+      assertThat(store.select("ci.hitchhiker.org")).map(ClientIdentity::getHost).hasValue("*.hitchhiker.org");
+      assertThat(store.select("git.ci.hitchhiker.org")).isEmpty();
+      assertThat(store.select("hitchhiker.org")).isEmpty();
+      assertThat(store.select("localhost")).isEmpty();
+    }
+  }
+
+  @Nested
+  @SubjectAware(value = "trillian", permissions = "sslContext:read")
+  class WithReadPermission {
+
+    @Test
+    void shouldNotStoreIdentity() throws Exception {
+      ClientIdentity identity = identity("git.hitchhiker.org");
+
+      assertThrows(AuthorizationException.class, () -> store.put(identity));
+    }
+
+    @Test
+    void shouldNotRemoveIdentity() {
+      assertThrows(AuthorizationException.class, () -> store.remove("git.hitchhiker.org"));
+    }
+  }
+
+  @Test
+  @SubjectAware(value = "trillian")
+  void shouldNotReadIdentitiesWithoutPermission() {
+    assertThrows(AuthorizationException.class, () -> store.getAll());
+  }
+
+  private ClientIdentity identity(String host) throws Exception {
+    return new ClientIdentity(host, keyPair.getPrivate(), new X509Certificate[]{x509});
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyStore;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClientIdentityTest {
+
+  private static final char[] PASSWORD = "secret".toCharArray();
+
+  private KeyPair keyPair;
+  private X509Certificate x509;
+
+  @BeforeEach
+  void createCertificate() throws GeneralSecurityException {
+    keyPair = createKeyPair();
+    x509 = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+  }
+
+  @Test
+  void shouldCreateIdentityFromOnlyPrivateKey() throws Exception {
+    KeyStore keyStore = createKeyStore(keyPair, x509, PASSWORD);
+    keyStore.setCertificateEntry("ca", x509);
+
+    ClientIdentity identity = ClientIdentity.of("git.hitchhiker.org", keyStore, PASSWORD);
+
+    assertThat(identity.getHost()).isEqualTo("git.hitchhiker.org");
+    assertThat(identity.getPrivateKey()).isEqualTo(keyPair.getPrivate());
+    assertThat(identity.getCertificate()).isEqualTo(x509);
+    assertThat(identity.getFingerprint()).isEqualTo(Certificate.createFingerprint(x509.getEncoded()));
+  }
+
+  @Test
+  void shouldFailWithoutPrivateKey() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("PKCS12");
+    keyStore.load(null, null);
+    keyStore.setCertificateEntry("one", x509);
+
+    CertificateException exception = assertThrows(
+      CertificateException.class, () -> ClientIdentity.of("git.hitchhiker.org", keyStore, PASSWORD)
+    );
+
+    assertThat(exception.getMessage()).isEqualTo("File contains no private key");
+  }
+
+  @Test
+  void shouldFailWithMoreThanOnePrivateKey() throws Exception {
+    KeyStore keyStore = createKeyStore(keyPair, x509, PASSWORD);
+    keyStore.setKeyEntry("second", keyPair.getPrivate(), PASSWORD, new java.security.cert.Certificate[]{x509});
+
+    CertificateException exception = assertThrows(
+      CertificateException.class, () -> ClientIdentity.of("git.hitchhiker.org", keyStore, PASSWORD)
+    );
+
+    assertThat(exception.getMessage()).isEqualTo("File contains more than one private key");
+  }
+
+  @Test
+  void shouldFailWithWrongKeyPassword() throws Exception {
+    KeyStore keyStore = createKeyStore(keyPair, x509, PASSWORD);
+
+    CertificateException exception = assertThrows(
+      CertificateException.class, () -> ClientIdentity.of("git.hitchhiker.org", keyStore, "wrong".toCharArray())
+    );
+
+    assertThat(exception.getMessage()).isEqualTo("Private key could not be read, the password of the key may be wrong");
+  }
+
+  @Test
+  void shouldValidateHosts() {
+    assertThat(ClientIdentity.isValidHost("git.hitchhiker.org")).isTrue();
+    assertThat(ClientIdentity.isValidHost("*.hitchhiker.org")).isTrue();
+    assertThat(ClientIdentity.isValidHost("localhost")).isTrue();
+    assertThat(ClientIdentity.isValidHost("git.*.org")).isFalse();
+    assertThat(ClientIdentity.isValidHost("*")).isFalse();
+    assertThat(ClientIdentity.isValidHost("git.hitchhiker.org/repo")).isFalse();
+    assertThat(ClientIdentity.normalize(" Git.Hitchhiker.ORG ")).isEqualTo("git.hitchhiker.org");
+  }
+
+  @Test
+  void shouldBeUsableForMatchingKeyTypeAndIssuer() throws Exception {
+    ClientIdentity identity = ClientIdentity.of("git.hitchhiker.org", createKeyStore(keyPair, x509, PASSWORD), PASSWORD);
+
+    assertThat(identity.isUsableFor(new String[]{"EC", "RSA"}, null)).isTrue();
+    assertThat(identity.isUsableFor(new String[]{"EC_RSA"}, null)).isFalse();
+    assertThat(identity.isUsableFor(new String[]{"RSA_EC"}, null)).isTrue();
+    assertThat(identity.isUsableFor(new String[]{"EC"}, null)).isFalse();
+    assertThat(identity.isUsableFor(new String[]{"RSA"}, new Principal[]{x509.getIssuerX500Principal()})).isTrue();
+    assertThat(identity.isUsableFor(new String[]{"RSA"}, new Principal[]{new X500Principal("CN=Vogon")})).isFalse();
+  }
+}
@@ -19,56 +19,92 @@ package com.cloudogu.sslcontext;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+/**
+ * Local TLS server for tests and benchmarks. The server accepts connections until it is closed and handles every
+ * connection on its own thread, so that it can be used by many concurrent clients.
+ */
 public class EchoServer {
 
+  // room for many clients which connect at once
+  private static final int BACKLOG = 1000;
+
   private final ExecutorService executorService;
   private ServerSocket serverSocket;
 
   EchoServer() {
-    this.executorService = Executors.newSingleThreadExecutor();
+    this.executorService = Executors.newCachedThreadPool();
   }
 
   public void start(KeyStore keyStore, char[] password) {
+    start(keyStore, password, null);
+  }
+
+  /**
+   * Starts the server, which requires a client certificate that is trusted by the given trust store. Without trust
+   * store no client certificate is requested.
+   */
+  public void start(KeyStore keyStore, char[] password, KeyStore clientTrustStore) {
     try {
       KeyManager[] keyManagers = getKeyManagers(keyStore, password);
-      SSLServerSocketFactory serverSocketFactory = createSSLContext(keyManagers).getServerSocketFactory();
-
-      serverSocket = serverSocketFactory.createServerSocket(0);
-      executorService.execute(() -> {
-        try {
-          Socket accept = serverSocket.accept();
-          BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(accept.getInputStream()));
-
-          String line = bufferedReader.readLine();
+      TrustManager[] trustManagers = clientTrustStore != null ? getTrustManagers(clientTrustStore) : null;
+      SSLServerSocketFactory serverSocketFactory = createSSLContext(keyManagers, trustManagers).getServerSocketFactory();
 
-          while (line != null) {
-            System.out.println(line);
-            line = bufferedReader.readLine();
-          }
-
-          bufferedReader.close();
-          accept.close();
-
-        } catch (IOException e) {
-          // e.printStackTrace();
-        }
-      });
+      SSLServerSocket sslServerSocket = (SSLServerSocket) serverSocketFactory.createServerSocket(0, BACKLOG);
+      sslServerSocket.setNeedClientAuth(clientTrustStore != null);
+      serverSocket = sslServerSocket;
+      executorService.execute(this::acceptConnections);
     } catch (GeneralSecurityException | IOException ex) {
       throw new IllegalStateException("failed to start echoserver", ex);
     }
   }
 
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket accept = serverSocket.accept();
+        executorService.execute(() -> echo(accept));
+      } catch (IOException e) {
+        // the server socket was closed
+      }
+    }
+  }
+
+  private void echo(Socket accept) {
+    try (Socket socket = accept;
+         BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+         Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+      String line = bufferedReader.readLine();
+
+      while (line != null) {
+        writer.write(line + "\n");
+        writer.flush();
+        line = bufferedReader.readLine();
+      }
+    } catch (IOException e) {
+      // the client closed the connection or rejected the certificate of the server
+    }
+  }
+
   public void send(SSLContextProvider provider, String message) {
     send(provider.get(), message);
   }
@@ -81,6 +117,41 @@ public class EchoServer {
     }
   }
 
+  /**
+   * Connects to the server and completes a full handshake, the session is invalidated afterwards so that the next
+   * handshake of the same context can not resume it and has to verify the certificates of the server again.
+   *
+   * @return {@code true} if the certificates of the server were accepted
+   */
+  public boolean handshake(SSLContext context) {
+    return handshake(context, false);
+  }
+
+  /**
+   * Connects to the server and completes a handshake. With {@code resumable} the session is kept in the session
+   * cache of the context, a message is exchanged with the server so that TLS 1.3 session tickets, which are sent
+   * after the handshake, are received as well.
+   *
+   * @return {@code true} if the certificates of the server were accepted or the session was resumed
+   */
+  public boolean handshake(SSLContext context, boolean resumable) {
+    try (SSLSocket socket = (SSLSocket) connect(context)) {
+      socket.startHandshake();
+      if (resumable) {
+        socket.getOutputStream().write("ping\n".getBytes(StandardCharsets.UTF_8));
+        socket.getOutputStream().flush();
+        new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+      } else {
+        socket.getSession().invalidate();
+      }
+      return true;
+    } catch (SSLException ex) {
+      return false;
+    } catch (IOException ex) {
+      throw new UncheckedIOException("failed to connect to echoserver", ex);
+    }
+  }
+
   private Socket connect(SSLContext context) throws IOException {
     return context.getSocketFactory().createSocket(
       "localhost", serverSocket.getLocalPort()
@@ -93,15 +164,21 @@ public class EchoServer {
     } catch (IOException e) {
       e.printStackTrace();
     }
-    executorService.shutdown();
+    executorService.shutdownNow();
   }
 
-  private SSLContext createSSLContext(KeyManager[] keyManagers) throws GeneralSecurityException {
+  private SSLContext createSSLContext(KeyManager[] keyManagers, TrustManager[] trustManagers) throws GeneralSecurityException {
     SSLContext sslContext = SSLContext.getInstance("TLS");
-    sslContext.init(keyManagers, null, null);
+    sslContext.init(keyManagers, trustManagers, null);
     return sslContext;
   }
 
+  private TrustManager[] getTrustManagers(KeyStore trustStore) throws GeneralSecurityException {
+    TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagerFactory.init(trustStore);
+    return trustManagerFactory.getTrustManagers();
+  }
+
   private KeyManager[] getKeyManagers(KeyStore keyStore, char[] password) throws GeneralSecurityException {
     KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
     keyManagerFactory.init(keyStore, password);
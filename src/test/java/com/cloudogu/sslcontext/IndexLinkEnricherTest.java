@@ -32,6 +32,8 @@ import sonia.scm.api.v2.resources.ScmPathInfoStore;
 
 import java.net.URI;
 
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.RETURNS_SELF;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -70,6 +72,9 @@ class IndexLinkEnricherTest {
 
     verify(linkArrayBuilder).append("rejected", "/scm/v2/ssl-context/rejected");
     verify(linkArrayBuilder).append("approved", "/scm/v2/ssl-context/approved");
+    verify(linkArrayBuilder).append("exportTrustStore", "/scm/v2/ssl-context/trust-store");
+    verify(linkArrayBuilder).append("clientIdentities", "/scm/v2/ssl-context/client-identities");
+    verify(linkArrayBuilder, never()).append(eq("importTrustStore"), anyString());
   }
 
   @Test
@@ -84,6 +89,7 @@ class IndexLinkEnricherTest {
     verify(linkArrayBuilder).append("rejected", "/scm/v2/ssl-context/rejected");
     verify(linkArrayBuilder).append("approved", "/scm/v2/ssl-context/approved");
     verify(linkArrayBuilder).append("upload", "/scm/v2/ssl-context/upload");
+    verify(linkArrayBuilder).append("importTrustStore", "/scm/v2/ssl-context/trust-store");
   }
 
   @Test
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.security.cert.CertificateException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PlatformRejectionCacheTest {
+
+  private final Instant now = Instant.now();
+
+  @Mock
+  private Clock clock;
+
+  private final CertificateException exception = new CertificateException("untrusted");
+
+  private PlatformRejectionCache cache;
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(clock.instant()).thenReturn(now);
+    cache = new PlatformRejectionCache(clock, 10);
+  }
+
+  @Test
+  void shouldNotBeRejectedWithoutRejection() {
+    assertThat(cache.getRejection("42")).isNull();
+  }
+
+  @Test
+  void shouldBeRejectedDuringBackoff() {
+    cache.rejected("42", exception);
+
+    assertThat(cache.getRejection("42")).isSameAs(exception);
+  }
+
+  @Test
+  void shouldKeepLatestReason() {
+    CertificateException expired = new CertificateException("expired");
+    cache.rejected("42", exception);
+    cache.rejected("42", expired);
+
+    assertThat(cache.getRejection("42")).isSameAs(expired);
+  }
+
+  @Test
+  void shouldRetryAfterBackoff() {
+    cache.rejected("42", exception);
+
+    when(clock.instant()).thenReturn(now.plus(2, ChronoUnit.MINUTES));
+
+    assertThat(cache.getRejection("42")).isNull();
+  }
+
+  @Test
+  void shouldDoubleBackoffOnRepeatedRejection() {
+    cache.rejected("42", exception);
+    when(clock.instant()).thenReturn(now.plus(1, ChronoUnit.MINUTES));
+    cache.rejected("42", exception);
+
+    when(clock.instant()).thenReturn(now.plus(2, ChronoUnit.MINUTES));
+    assertThat(cache.getRejection("42")).isSameAs(exception);
+
+    when(clock.instant()).thenReturn(now.plus(4, ChronoUnit.MINUTES));
+    assertThat(cache.getRejection("42")).isNull();
+  }
+
+  @Test
+  void shouldLimitBackoff() {
+    for (int i = 0; i < 20; i++) {
+      cache.rejected("42", exception);
+    }
+
+    when(clock.instant()).thenReturn(now.plus(PlatformRejectionCache.MAX_BACKOFF).plusSeconds(1));
+    assertThat(cache.getRejection("42")).isNull();
+  }
+
+  @Test
+  void shouldForgetRejectionOnAccept() {
+    cache.rejected("42", exception);
+
+    cache.accepted("42");
+
+    assertThat(cache.getRejection("42")).isNull();
+  }
+}
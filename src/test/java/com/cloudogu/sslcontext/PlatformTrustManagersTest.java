@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlatformTrustManagersTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  void shouldNotLoadBeforeFirstAccess() {
+    new PlatformTrustManagers(meterRegistry);
+
+    assertThat(meterRegistry.get("sslcontext.platform.load").timer().count()).isZero();
+  }
+
+  @Test
+  void shouldLoadOnlyOnce() {
+    PlatformTrustManagers platformTrustManagers = new PlatformTrustManagers(meterRegistry);
+
+    assertThat(platformTrustManagers.get()).isNotEmpty();
+    assertThat(platformTrustManagers.get()).isSameAs(platformTrustManagers.get());
+    assertThat(meterRegistry.get("sslcontext.platform.load").timer().count()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static com.cloudogu.sslcontext.Certificate.Error.EXPIRED;
+import static com.cloudogu.sslcontext.Certificate.Error.UNKNOWN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class RejectedCertificateCollectorTest {
+
+  @Mock
+  private CertificateStore store;
+
+  private RejectedCertificateCollector collector;
+
+  @BeforeEach
+  void setUp() {
+    collector = new RejectedCertificateCollector(store, new SimpleMeterRegistry(), 2);
+  }
+
+  @Test
+  void shouldNotWriteBeforeFlush() throws GeneralSecurityException {
+    collector.capture(createChain(), UNKNOWN);
+
+    verify(store, never()).put(any());
+  }
+
+  @Test
+  void shouldWritePendingChainsOnClose() throws GeneralSecurityException {
+    collector.start();
+    collector.capture(createChain(), UNKNOWN);
+
+    collector.close();
+
+    verify(store).put(any());
+  }
+
+  @Test
+  void shouldWriteChainOnFlush() throws GeneralSecurityException {
+    X509Certificate[] chain = createChain();
+    collector.capture(chain, EXPIRED);
+
+    collector.flush();
+
+    ArgumentCaptor<Certificate> captor = ArgumentCaptor.forClass(Certificate.class);
+    verify(store).put(captor.capture());
+    Certificate certificate = captor.getValue();
+    assertThat(certificate.getEncoded()).isEqualTo(chain[0].getEncoded());
+    assertThat(certificate.getParent().getEncoded()).isEqualTo(chain[1].getEncoded());
+    assertThat(certificate.getError()).isEqualTo(EXPIRED);
+    assertThat(certificate.getOccurrences()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldCoalesceIdenticalChains() throws GeneralSecurityException {
+    X509Certificate[] chain = createChain();
+    collector.capture(chain, UNKNOWN);
+    collector.capture(chain, UNKNOWN);
+    collector.capture(chain, UNKNOWN);
+
+    collector.flush();
+
+    ArgumentCaptor<Certificate> captor = ArgumentCaptor.forClass(Certificate.class);
+    verify(store, times(1)).put(captor.capture());
+    assertThat(captor.getValue().getOccurrences()).isEqualTo(3);
+  }
+
+  @Test
+  void shouldDropChainsIfFull() throws GeneralSecurityException {
+    X509Certificate[] first = createChain();
+    collector.capture(first, UNKNOWN);
+    collector.capture(createChain(), UNKNOWN);
+    collector.capture(createChain(), UNKNOWN);
+    collector.capture(first, UNKNOWN);
+
+    collector.flush();
+
+    ArgumentCaptor<Certificate> captor = ArgumentCaptor.forClass(Certificate.class);
+    verify(store, times(2)).put(captor.capture());
+    List<Certificate> certificates = captor.getAllValues();
+    assertThat(certificates).extracting(Certificate::getOccurrences).containsExactlyInAnyOrder(2L, 1L);
+    assertThat(collector.getDroppedCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldAcceptChainsAgainAfterFlush() throws GeneralSecurityException {
+    collector.capture(createChain(), UNKNOWN);
+    collector.capture(createChain(), UNKNOWN);
+    collector.flush();
+
+    collector.capture(createChain(), UNKNOWN);
+    collector.capture(createChain(), UNKNOWN);
+    collector.flush();
+
+    verify(store, times(4)).put(any());
+    assertThat(collector.getDroppedCount()).isZero();
+  }
+
+  @Test
+  void shouldNotExceedCapacityWithConcurrentCaptures() throws Exception {
+    RejectedCertificateCollector limited = new RejectedCertificateCollector(store, new SimpleMeterRegistry(), 4);
+    List<X509Certificate[]> chains = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      chains.add(createChain());
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(chains.size());
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> captures = new ArrayList<>();
+      for (X509Certificate[] chain : chains) {
+        captures.add(executor.submit(() -> {
+          start.await();
+          limited.capture(chain, UNKNOWN);
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> capture : captures) {
+        capture.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    limited.flush();
+
+    verify(store, times(4)).put(any());
+    assertThat(limited.getDroppedCount()).isEqualTo(12);
+  }
+
+  private X509Certificate[] createChain() throws GeneralSecurityException {
+    Instant now = Instant.now();
+    return new X509Certificate[]{
+      createX509Cert(createKeyPair(), now, now.plus(1, ChronoUnit.DAYS)),
+      createX509Cert(createKeyPair(), now, now.plus(1, ChronoUnit.DAYS))
+    };
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class SSLContextLifecycleTest {
+
+  @Mock
+  private TrustedCertificatesStore trustedCertificatesStore;
+  @Mock
+  private RejectedCertificateCollector rejectedCertificateCollector;
+
+  @InjectMocks
+  private SSLContextLifecycle lifecycle;
+
+  @Test
+  void shouldStartCollectorOnInitialization() {
+    lifecycle.contextInitialized(null);
+
+    verify(rejectedCertificateCollector).start();
+    verifyNoInteractions(trustedCertificatesStore);
+  }
+
+  @Test
+  void shouldCloseCollectorBeforeStoreOnDestroy() {
+    lifecycle.contextDestroyed(null);
+
+    InOrder inOrder = inOrder(rejectedCertificateCollector, trustedCertificatesStore);
+    inOrder.verify(rejectedCertificateCollector).close();
+    inOrder.verify(trustedCertificatesStore).close();
+  }
+}
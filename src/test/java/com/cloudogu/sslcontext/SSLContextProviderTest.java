@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.net.ssl.SSLContext;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createCipherHandler;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyStore;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith({MockitoExtension.class, SecureEchoServerExtension.class})
+class SSLContextProviderTest {
+
+  private static final char[] PASSWORD = "secret".toCharArray();
+
+  @Mock
+  private RejectedCertificateCollector collector;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final TrustedCertificatesStore trustedCertificatesStore = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), meterRegistry);
+
+  private KeyStore serverKeyStore;
+  private SSLContextProvider provider;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    KeyPair keyPair = createKeyPair();
+    X509Certificate certificate = createX509Cert(
+      keyPair, Instant.now().minus(1, ChronoUnit.MINUTES), Instant.now().plus(1, ChronoUnit.DAYS)
+    );
+    serverKeyStore = createKeyStore(keyPair, certificate, PASSWORD);
+
+    KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    trustStore.load(null, null);
+    trustStore.setCertificateEntry("server", certificate);
+    provider = new SSLContextProvider(
+      new CapturingTrustManager(collector, TrustManagerChain.createTrustManagers(trustStore).get(0), meterRegistry),
+      new ClientIdentityKeyManager(new ClientIdentityStore(new InMemoryBlobStoreFactory(), createCipherHandler())),
+      trustedCertificatesStore,
+      meterRegistry
+    );
+  }
+
+  @AfterEach
+  void clearProperties() {
+    System.clearProperty(SSLContextProvider.SESSION_CACHE_SIZE_PROPERTY);
+    System.clearProperty(SSLContextProvider.SESSION_TIMEOUT_PROPERTY);
+  }
+
+  @Test
+  void shouldResumeSessionsWithoutVerification(EchoServer echoServer) {
+    echoServer.start(serverKeyStore, PASSWORD);
+    SSLContext context = provider.get();
+
+    assertThat(echoServer.handshake(context, true)).isTrue();
+    assertThat(echoServer.handshake(context, true)).isTrue();
+    assertThat(echoServer.handshake(context, true)).isTrue();
+
+    assertThat(provider.getSessionMetrics().getVerificationCount()).isEqualTo(1);
+    assertThat(meterRegistry.get("sslcontext.session.verifications").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldVerifyServerAgainAfterTrustChange(EchoServer echoServer) throws Exception {
+    echoServer.start(serverKeyStore, PASSWORD);
+    SSLContext context = provider.get();
+    assertThat(echoServer.handshake(context, true)).isTrue();
+    assertThat(echoServer.handshake(context, true)).isTrue();
+
+    X509Certificate other = createX509Cert(createKeyPair(), Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+    trustedCertificatesStore.add(new Certificate(other.getEncoded(), Certificate.Error.UNKNOWN));
+
+    assertThat(echoServer.handshake(context, true)).isTrue();
+    assertThat(provider.getSessionMetrics().getVerificationCount()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldVerifyServerAgainForInvalidatedSessions(EchoServer echoServer) {
+    echoServer.start(serverKeyStore, PASSWORD);
+    SSLContext context = provider.get();
+
+    assertThat(echoServer.handshake(context)).isTrue();
+    assertThat(echoServer.handshake(context)).isTrue();
+
+    assertThat(provider.getSessionMetrics().getVerificationCount()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldProvideContextOfPlatform() {
+    SSLContext context = provider.get();
+
+    // a delegating context would hide the trust manager from clients which extract it from the socket factory
+    assertThat(context.getClass()).isEqualTo(SSLContext.class);
+    assertThat(meterRegistry.find("sslcontext.session.resumption").meter()).isNull();
+    assertThat(meterRegistry.find("sslcontext.session.connections").meter()).isNull();
+  }
+
+  @Test
+  void shouldUseDefaultsOfJvmForClientSessionCache() throws Exception {
+    SSLContext defaults = SSLContext.getInstance("TLS");
+    defaults.init(null, null, null);
+
+    SSLContext context = provider.get();
+
+    assertThat(context.getClientSessionContext().getSessionCacheSize())
+      .isEqualTo(defaults.getClientSessionContext().getSessionCacheSize());
+    assertThat(context.getClientSessionContext().getSessionTimeout())
+      .isEqualTo(defaults.getClientSessionContext().getSessionTimeout());
+  }
+
+  @Test
+  void shouldConfigureClientSessionCache() {
+    System.setProperty(SSLContextProvider.SESSION_CACHE_SIZE_PROPERTY, "42");
+    System.setProperty(SSLContextProvider.SESSION_TIMEOUT_PROPERTY, "600");
+
+    SSLContext context = provider.get();
+
+    assertThat(context.getClientSessionContext().getSessionCacheSize()).isEqualTo(42);
+    assertThat(context.getClientSessionContext().getSessionTimeout()).isEqualTo(600);
+  }
+}
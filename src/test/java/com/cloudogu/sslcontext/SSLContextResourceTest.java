@@ -16,7 +16,10 @@
 
 package com.cloudogu.sslcontext;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.io.Resources;
+import de.otto.edison.hal.Embedded;
+import de.otto.edison.hal.Links;
 import org.github.sdorra.jse.ShiroExtension;
 import org.github.sdorra.jse.SubjectAware;
 import org.jboss.resteasy.mock.MockHttpRequest;
@@ -25,6 +28,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import sonia.scm.web.RestDispatcher;
@@ -38,18 +42,31 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(ShiroExtension.class)
 @ExtendWith(MockitoExtension.class)
@@ -62,13 +79,15 @@ class SSLContextResourceTest {
   private CertificateStore store;
   @Mock
   private CertificateCollectionMapper collectionMapper;
+  @Mock
+  private CertificateMapper certificateMapper;
 
   private RestDispatcher dispatcher;
   private final MockHttpResponse response = new MockHttpResponse();
 
   @BeforeEach
   void initResource() {
-    SSLContextResource resource = new SSLContextResource(store, collectionMapper);
+    SSLContextResource resource = new SSLContextResource(store, collectionMapper, new CertificateStreamWriter(certificateMapper, new ObjectMapper()));
     dispatcher = new RestDispatcher();
     dispatcher.addSingletonResource(resource);
   }
@@ -83,8 +102,135 @@ class SSLContextResourceTest {
 
     assertThat(response.getStatus()).isEqualTo(200);
 
-    verify(store, times(1)).getAllRejected();
-    verify(collectionMapper, times(1)).map(any(), eq(Certificate.Status.REJECTED));
+    verify(store, times(1)).getRejected(any());
+    verify(collectionMapper, times(1)).map(any(), eq(Certificate.Status.REJECTED), any());
+  }
+
+  @Test
+  void shouldPassQueryParameters() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .get("/v2/ssl-context/rejected?page=2&pageSize=20&sortBy=notAfter&desc=false&error=expired&uploaded=true&q=Hitchhiker")
+      .contentType(SSLContextResource.MEDIA_TYPE);
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(200);
+
+    ArgumentCaptor<CertificateQuery> captor = ArgumentCaptor.forClass(CertificateQuery.class);
+    verify(store).getRejected(captor.capture());
+    CertificateQuery query = captor.getValue();
+    assertThat(query.getPage()).isEqualTo(2);
+    assertThat(query.getPageSize()).isEqualTo(20);
+    assertThat(query.getSortBy()).isEqualTo(CertificateQuery.SortBy.NOT_AFTER);
+    assertThat(query.isDesc()).isFalse();
+    assertThat(query.getError()).contains(Certificate.Error.EXPIRED);
+    assertThat(query.getUploaded()).contains(true);
+    assertThat(query.getSearch()).contains("hitchhiker");
+  }
+
+  @Test
+  void shouldRejectUnknownSortOrder() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .get("/v2/ssl-context/rejected?sortBy=color")
+      .contentType(SSLContextResource.MEDIA_TYPE);
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+  }
+
+  @Test
+  void shouldReturnEntityTag() throws URISyntaxException {
+    when(store.getRejectedVersion()).thenReturn(42L);
+    MockHttpRequest request = MockHttpRequest
+      .get("/v2/ssl-context/rejected")
+      .contentType(SSLContextResource.MEDIA_TYPE);
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getOutputHeaders().getFirst("ETag")).asString().contains("-42-");
+  }
+
+  @Test
+  void shouldAnswerNotModifiedForUnchangedCerts() throws URISyntaxException {
+    when(store.getRejectedVersion()).thenReturn(42L);
+    dispatcher.invoke(MockHttpRequest.get("/v2/ssl-context/rejected"), response);
+    String etag = response.getOutputHeaders().getFirst("ETag").toString();
+
+    MockHttpResponse secondResponse = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get("/v2/ssl-context/rejected").header("If-None-Match", etag), secondResponse);
+
+    assertThat(secondResponse.getStatus()).isEqualTo(304);
+    verify(store, times(1)).getRejected(any());
+    verify(collectionMapper, times(1)).map(any(), eq(Certificate.Status.REJECTED), any());
+  }
+
+  @Test
+  void shouldReturnDifferentEntityTagsForDifferentPages() throws URISyntaxException {
+    when(store.getRejectedVersion()).thenReturn(42L);
+    dispatcher.invoke(MockHttpRequest.get("/v2/ssl-context/rejected?page=0&pageSize=10"), response);
+    String firstPage = response.getOutputHeaders().getFirst("ETag").toString();
+
+    MockHttpResponse secondResponse = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get("/v2/ssl-context/rejected?page=1&pageSize=10"), secondResponse);
+    String secondPage = secondResponse.getOutputHeaders().getFirst("ETag").toString();
+
+    assertThat(secondPage).isNotEqualTo(firstPage);
+  }
+
+  @Test
+  void shouldNotAnswerNotModifiedForOtherPage() throws URISyntaxException {
+    when(store.getRejectedVersion()).thenReturn(42L);
+    dispatcher.invoke(MockHttpRequest.get("/v2/ssl-context/rejected?page=0&pageSize=10"), response);
+    String etag = response.getOutputHeaders().getFirst("ETag").toString();
+
+    MockHttpResponse secondResponse = new MockHttpResponse();
+    dispatcher.invoke(
+      MockHttpRequest.get("/v2/ssl-context/rejected?page=1&pageSize=10").header("If-None-Match", etag), secondResponse
+    );
+
+    assertThat(secondResponse.getStatus()).isEqualTo(200);
+    verify(store, times(2)).getRejected(any());
+  }
+
+  @Test
+  void shouldAnswerWithCertsAfterChange() throws URISyntaxException {
+    when(store.getApprovedVersion()).thenReturn(1L, 2L);
+    dispatcher.invoke(MockHttpRequest.get("/v2/ssl-context/approved"), response);
+    String etag = response.getOutputHeaders().getFirst("ETag").toString();
+
+    MockHttpResponse secondResponse = new MockHttpResponse();
+    dispatcher.invoke(MockHttpRequest.get("/v2/ssl-context/approved").header("If-None-Match", etag), secondResponse);
+
+    assertThat(secondResponse.getStatus()).isEqualTo(200);
+    verify(store, times(2)).getApproved(any());
+  }
+
+  @Test
+  void shouldStreamRejectedCerts() throws URISyntaxException, UnsupportedEncodingException {
+    Certificate marvin = new Certificate("marvin".getBytes(), Certificate.Error.UNKNOWN);
+    Certificate trillian = new Certificate("trillian".getBytes(), Certificate.Error.UNKNOWN);
+    when(store.streamRejected(any())).thenReturn(Stream.of(marvin, trillian));
+    when(certificateMapper.map(any())).thenAnswer(invocation -> {
+      CertificateDto dto = new CertificateDto(Links.emptyLinks(), Embedded.emptyEmbedded());
+      dto.setFingerprint(invocation.getArgument(0, Certificate.class).getFingerprint());
+      return dto;
+    });
+    MockHttpRequest request = MockHttpRequest
+      .get("/v2/ssl-context/rejected/stream?pageSize=2")
+      .accept(SSLContextResource.STREAM_MEDIA_TYPE);
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getContentAsString().split("\n"))
+      .hasSize(2)
+      .satisfiesExactly(
+        line -> assertThat(line).contains(marvin.getFingerprint()),
+        line -> assertThat(line).contains(trillian.getFingerprint())
+      );
+    verify(collectionMapper, never()).map(any(), any(), any());
   }
 
   @Test
@@ -97,8 +243,8 @@ class SSLContextResourceTest {
 
     assertThat(response.getStatus()).isEqualTo(200);
 
-    verify(store, times(1)).getAllApproved();
-    verify(collectionMapper, times(1)).map(any(), eq(Certificate.Status.APPROVED));
+    verify(store, times(1)).getApproved(any());
+    verify(collectionMapper, times(1)).map(any(), eq(Certificate.Status.APPROVED), any());
   }
 
   @Test
@@ -114,6 +260,76 @@ class SSLContextResourceTest {
     verify(store, times(1)).approve("42", "21");
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldApplyBatch() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/batch")
+      .contentType(MediaType.APPLICATION_JSON_TYPE)
+      .content(("{\"operations\":[" +
+        "{\"type\":\"approve\",\"storedId\":\"42\",\"id\":\"21\"}," +
+        "{\"type\":\"reject\",\"storedId\":\"43\",\"id\":\"43\"}," +
+        "{\"type\":\"remove\",\"id\":\"44\"}" +
+        "]}").getBytes());
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(204);
+    ArgumentCaptor<Consumer<CertificateStore.Batch>> captor = ArgumentCaptor.forClass(Consumer.class);
+    verify(store).batch(captor.capture());
+    CertificateStore.Batch batch = mock(CertificateStore.Batch.class);
+    captor.getValue().accept(batch);
+    verify(batch).approve("42", "21");
+    verify(batch).reject("43", "43");
+    verify(batch).removeRejected("44");
+  }
+
+  @Test
+  void shouldRejectBatchWithIncompleteOperation() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/batch")
+      .contentType(MediaType.APPLICATION_JSON_TYPE)
+      .content("{\"operations\":[{\"type\":\"approve\",\"id\":\"21\"}]}".getBytes());
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).batch(any());
+  }
+
+  @Test
+  void shouldRejectBatchWithoutBody() throws URISyntaxException {
+    invokeBatch("null");
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).batch(any());
+  }
+
+  @Test
+  void shouldRejectBatchWithoutOperations() throws URISyntaxException {
+    invokeBatch("{}");
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).batch(any());
+  }
+
+  @Test
+  void shouldRejectBatchWithMissingOperation() throws URISyntaxException {
+    invokeBatch("{\"operations\":[null]}");
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).batch(any());
+  }
+
+  private void invokeBatch(String content) throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/batch")
+      .contentType(MediaType.APPLICATION_JSON_TYPE)
+      .content(content.getBytes());
+
+    dispatcher.invoke(request, response);
+  }
+
   @Test
   void shouldRejectCert() throws URISyntaxException {
     MockHttpRequest request = MockHttpRequest
@@ -128,6 +344,7 @@ class SSLContextResourceTest {
   }
 
   @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
   void shouldUploadCert() throws URISyntaxException, IOException {
     File certFile = readFile("com/cloudogu/sslcontext/cert-001");
 
@@ -141,10 +358,152 @@ class SSLContextResourceTest {
     }
 
     assertThat(response.getStatus()).isEqualTo(204);
-    verify(store).upload(any(Certificate.class));
+    verify(store).upload(anyCollection());
   }
 
   @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
+  @SuppressWarnings("unchecked")
+  void shouldUploadPemBundle() throws URISyntaxException, IOException {
+    String bundle = toPem(readFile("com/cloudogu/sslcontext/cert-001"))
+      + toPem(readFile("com/cloudogu/sslcontext/cert-002-expired"));
+
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/upload")
+      .content(bundle.getBytes(StandardCharsets.US_ASCII))
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(204);
+    ArgumentCaptor<Collection<Certificate>> certificates = ArgumentCaptor.forClass(Collection.class);
+    verify(store).upload(certificates.capture());
+    assertThat(certificates.getValue()).hasSize(2);
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read")
+  void shouldExportTrustStore() throws Exception {
+    KeyStore trusted = KeyStore.getInstance("PKCS12");
+    trusted.load(null, null);
+    trusted.setCertificateEntry("one", certificateFactory().generateCertificate(new ByteArrayInputStream(Files.readAllBytes(readFile("com/cloudogu/sslcontext/cert-001").toPath()))));
+    when(store.getTrusted()).thenReturn(trusted);
+
+    MockHttpRequest request = MockHttpRequest.get("/v2/ssl-context/trust-store?format=jks")
+      .header(SSLContextResource.PASSWORD_HEADER, "secret");
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getOutputHeaders().getFirst("Content-Disposition")).hasToString("attachment; filename=\"trust-store.jks\"");
+    KeyStore exported = KeyStore.getInstance("JKS");
+    exported.load(new ByteArrayInputStream(response.getOutput()), "secret".toCharArray());
+    assertThat(exported.containsAlias("one")).isTrue();
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read")
+  void shouldNotExportUnknownFormat() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest.get("/v2/ssl-context/trust-store?format=pem");
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).getTrusted();
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read")
+  void shouldNotExportWithoutPassword() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest.get("/v2/ssl-context/trust-store?format=pkcs12");
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).getTrusted();
+  }
+
+  @Test
+  void shouldNotExportTrustStoreWithoutReadPermission() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest.get("/v2/ssl-context/trust-store?format=pem");
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(403);
+    verify(store, never()).getTrusted();
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
+  @SuppressWarnings("unchecked")
+  void shouldImportTrustStore() throws Exception {
+    KeyStore trustStore = KeyStore.getInstance("PKCS12");
+    trustStore.load(null, null);
+    trustStore.setCertificateEntry("one", certificateFactory().generateCertificate(new ByteArrayInputStream(Files.readAllBytes(readFile("com/cloudogu/sslcontext/cert-001").toPath()))));
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    trustStore.store(file, "changeit".toCharArray());
+
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/trust-store")
+      .header(SSLContextResource.PASSWORD_HEADER, "changeit")
+      .content(file.toByteArray())
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(204);
+    ArgumentCaptor<Collection<Certificate>> certificates = ArgumentCaptor.forClass(Collection.class);
+    verify(store).importTrusted(certificates.capture());
+    assertThat(certificates.getValue()).hasSize(1);
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
+  void shouldNotImportInvalidTrustStore() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/trust-store")
+      .header(SSLContextResource.PASSWORD_HEADER, "secret")
+      .content("hitchhiker".getBytes())
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).importTrusted(anyCollection());
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
+  void shouldNotImportTrustStoreWithoutPassword() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/trust-store?password=secret")
+      .content("hitchhiker".getBytes())
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(400);
+    verify(store, never()).importTrusted(anyCollection());
+  }
+
+  @Test
+  void shouldNotReadTrustStoreWithoutManagePermission() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/trust-store")
+      .header(SSLContextResource.PASSWORD_HEADER, "secret")
+      .content("hitchhiker".getBytes())
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE);
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(403);
+    verify(store, never()).importTrusted(anyCollection());
+  }
+
+  private CertificateFactory certificateFactory() throws CertificateException {
+    return CertificateFactory.getInstance("X.509");
+  }
+
+  private String toPem(File file) throws IOException {
+    return "-----BEGIN CERTIFICATE-----\n"
+      + Base64.getMimeEncoder().encodeToString(Files.readAllBytes(file.toPath()))
+      + "\n-----END CERTIFICATE-----\n";
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
   void shouldNotUploadTooLargeCertFile(@TempDir Path temp) throws URISyntaxException, IOException {
     File certFile = Files.createFile(temp.resolve("cert-too-big")).toFile();
 
@@ -165,6 +524,7 @@ class SSLContextResourceTest {
   }
 
   @Test
+  @SubjectAware(value = "trillian", permissions = "sslContext:read,write")
   void shouldNotUploadIfNotValidX509Cert(@TempDir Path temp) throws URISyntaxException, IOException {
     File certFile = Files.createFile(temp.resolve("cert-invalid")).toFile();
 
@@ -180,6 +540,19 @@ class SSLContextResourceTest {
     assertThat(response.getStatus()).isEqualTo(400);
   }
 
+  @Test
+  void shouldNotReadUploadWithoutManagePermission() throws URISyntaxException {
+    MockHttpRequest request = MockHttpRequest
+      .post("/v2/ssl-context/upload")
+      .contentType(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+      .content("hitchhiker".getBytes());
+
+    dispatcher.invoke(request, response);
+
+    assertThat(response.getStatus()).isEqualTo(403);
+    verify(store, never()).upload(anyCollection());
+  }
+
   @SuppressWarnings("UnstableApiUsage")
   private File readFile(String path) throws URISyntaxException {
     return Paths.get(Resources.getResource(path).toURI()).toFile();
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.X509TrustManager;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TrustManagerChainTest {
+
+  private static final PlatformTrustManagers PLATFORM_TRUST_MANAGERS = new PlatformTrustManagers(new SimpleMeterRegistry());
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private TrustedCertificatesStore store;
+  private TrustManagerChain chain;
+
+  private X509Certificate[] serverChain;
+
+  @BeforeEach
+  void setUp() throws GeneralSecurityException {
+    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(), meterRegistry);
+    chain = new TrustManagerChain(store, PLATFORM_TRUST_MANAGERS, meterRegistry);
+
+    X509Certificate certificate = createX509Cert(
+      createKeyPair(),
+      Instant.now().minus(1, ChronoUnit.MINUTES),
+      Instant.now().plus(1, ChronoUnit.DAYS)
+    );
+    serverChain = new X509Certificate[]{certificate};
+  }
+
+  @Test
+  void shouldRejectUnknownCertificate() {
+    assertThrows(CertificateException.class, () -> chain.checkServerTrusted(serverChain, "RSA"));
+  }
+
+  @Test
+  void shouldTrustStoredCertificate() throws CertificateException {
+    store.add(new Certificate(serverChain[0].getEncoded(), Certificate.Error.UNKNOWN));
+
+    chain.checkServerTrusted(serverChain, "RSA");
+  }
+
+  @Test
+  void shouldTrustStoredCertificateWhichWasRejectedBefore() throws CertificateException {
+    assertThrows(CertificateException.class, () -> chain.checkServerTrusted(serverChain, "RSA"));
+
+    store.add(new Certificate(serverChain[0].getEncoded(), Certificate.Error.UNKNOWN));
+
+    chain.checkServerTrusted(serverChain, "RSA");
+  }
+
+  @Test
+  void shouldNotAskPlatformAgainDuringBackoff() throws CertificateException {
+    X509TrustManager platformTrustManager = mock(X509TrustManager.class);
+    CertificateException rejection = new CertificateException("untrusted");
+    doThrow(rejection).when(platformTrustManager).checkServerTrusted(any(), anyString());
+    PlatformTrustManagers platformTrustManagers = mock(PlatformTrustManagers.class);
+    when(platformTrustManagers.get()).thenReturn(List.of(platformTrustManager));
+    TrustManagerChain chainWithBackoff = new TrustManagerChain(store, platformTrustManagers, meterRegistry);
+
+    assertThrows(CertificateException.class, () -> chainWithBackoff.checkServerTrusted(serverChain, "RSA"));
+    CertificateException second = assertThrows(
+      CertificateException.class, () -> chainWithBackoff.checkServerTrusted(serverChain, "RSA")
+    );
+    CertificateException third = assertThrows(
+      CertificateException.class, () -> chainWithBackoff.checkServerTrusted(serverChain, "RSA")
+    );
+
+    assertThat(second).isNotSameAs(rejection).isNotSameAs(third).hasMessage("untrusted");
+    assertThat(second.getCause()).isSameAs(rejection);
+    verify(platformTrustManager, times(1)).checkServerTrusted(any(), anyString());
+  }
+
+  @Test
+  void shouldCacheVerifiedChain() throws CertificateException {
+    store.add(new Certificate(serverChain[0].getEncoded(), Certificate.Error.UNKNOWN));
+
+    chain.checkServerTrusted(serverChain, "RSA");
+    chain.checkServerTrusted(serverChain, "RSA");
+
+    assertThat(chain.getVerifiedChainCache().getMissCount()).isEqualTo(1);
+    assertThat(chain.getVerifiedChainCache().getHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldInvalidateCacheOnStoreChange() throws CertificateException {
+    Certificate certificate = new Certificate(serverChain[0].getEncoded(), Certificate.Error.UNKNOWN);
+    store.add(certificate);
+    chain.checkServerTrusted(serverChain, "RSA");
+
+    store.remove(certificate);
+
+    assertThrows(CertificateException.class, () -> chain.checkServerTrusted(serverChain, "RSA"));
+  }
+
+  @Test
+  void shouldRecordOutcomeOfChecks() throws CertificateException {
+    assertThrows(CertificateException.class, () -> chain.checkServerTrusted(serverChain, "RSA"));
+    store.add(new Certificate(serverChain[0].getEncoded(), Certificate.Error.UNKNOWN));
+    chain.checkServerTrusted(serverChain, "RSA");
+    chain.checkServerTrusted(serverChain, "RSA");
+
+    assertThat(checks("failed")).isEqualTo(1);
+    assertThat(checks("stored")).isEqualTo(1);
+    assertThat(checks("cached")).isEqualTo(1);
+    assertThat(checks("platform")).isZero();
+    assertThat(meterRegistry.get("sslcontext.trust.reload").timer().count()).isEqualTo(1);
+  }
+
+  private long checks(String outcome) {
+    return meterRegistry.get("sslcontext.trust.check").tag("outcome", outcome).timer().count();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.net.ssl.X509TrustManager;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TrustSnapshotTest {
+
+  @Mock
+  private X509TrustManager platformTrustManager;
+  @Mock
+  private X509TrustManager storedTrustManager;
+
+  private X509Certificate platformIssuer;
+  private X509Certificate storedIssuer;
+
+  @BeforeEach
+  void setUp() throws GeneralSecurityException {
+    platformIssuer = createCertificate();
+    storedIssuer = createCertificate();
+    when(platformTrustManager.getAcceptedIssuers()).thenReturn(new X509Certificate[]{platformIssuer});
+  }
+
+  @Test
+  void shouldMergeAcceptedIssuers() {
+    when(storedTrustManager.getAcceptedIssuers()).thenReturn(new X509Certificate[]{storedIssuer, platformIssuer});
+
+    TrustSnapshot snapshot = new TrustSnapshot(
+      Collections.singletonList(platformTrustManager), Collections.singletonList(storedTrustManager)
+    );
+
+    assertThat(snapshot.getAcceptedIssuers()).containsExactly(platformIssuer, storedIssuer);
+  }
+
+  @Test
+  void shouldReturnCopyOfAcceptedIssuers() {
+    TrustSnapshot snapshot = new TrustSnapshot(Collections.singletonList(platformTrustManager), Collections.emptyList());
+
+    X509Certificate[] issuers = snapshot.getAcceptedIssuers();
+    issuers[0] = null;
+
+    assertThat(snapshot.getAcceptedIssuers()).containsExactly(platformIssuer);
+  }
+
+  @Test
+  void shouldCreateNewVersionWithStoredTrustManagers() {
+    when(storedTrustManager.getAcceptedIssuers()).thenReturn(new X509Certificate[]{storedIssuer});
+    TrustSnapshot snapshot = new TrustSnapshot(Collections.singletonList(platformTrustManager), Collections.emptyList());
+
+    TrustSnapshot next = snapshot.withStoredTrustManagers(Collections.singletonList(storedTrustManager));
+
+    assertThat(next.getVersion()).isEqualTo(snapshot.getVersion() + 1);
+    assertThat(next.getAcceptedIssuers()).containsExactly(platformIssuer, storedIssuer);
+    assertThat(snapshot.getAcceptedIssuers()).containsExactly(platformIssuer);
+  }
+
+  private X509Certificate createCertificate() throws GeneralSecurityException {
+    return createX509Cert(createKeyPair(), Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrustStoreFileTest {
+
+  private static final char[] PASSWORD = "secret".toCharArray();
+
+  private KeyPair keyPair;
+  private X509Certificate x509;
+
+  @BeforeEach
+  void createCertificate() throws GeneralSecurityException {
+    keyPair = createKeyPair();
+    x509 = createX509Cert(keyPair, Instant.now(), Instant.now().plus(1, ChronoUnit.DAYS));
+  }
+
+  @Test
+  void shouldWriteAndReadPkcs12() throws Exception {
+    shouldWriteAndRead(TrustStoreFile.Format.PKCS12);
+  }
+
+  @Test
+  void shouldWriteAndReadJks() throws Exception {
+    shouldWriteAndRead(TrustStoreFile.Format.JKS);
+  }
+
+  private void shouldWriteAndRead(TrustStoreFile.Format format) throws Exception {
+    KeyStore source = keyStore("PKCS12");
+    source.setCertificateEntry("one", x509);
+
+    byte[] file = write(source, format);
+    List<Certificate> certificates = TrustStoreFile.read(new ByteArrayInputStream(file), PASSWORD);
+
+    assertThat(certificates).hasSize(1);
+    assertThat(certificates.get(0).getEncoded()).isEqualTo(x509.getEncoded());
+  }
+
+  @Test
+  void shouldSkipDuplicatesAndPrivateKeys() throws Exception {
+    KeyStore source = keyStore("JKS");
+    source.setCertificateEntry("one", x509);
+    source.setCertificateEntry("two", x509);
+    source.setKeyEntry("key", keyPair.getPrivate(), PASSWORD, new java.security.cert.Certificate[]{
+      createX509Cert(keyPair, Instant.now(), Instant.now().plus(2, ChronoUnit.DAYS))
+    });
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    source.store(output, PASSWORD);
+
+    List<Certificate> certificates = TrustStoreFile.read(new ByteArrayInputStream(output.toByteArray()), PASSWORD);
+
+    assertThat(certificates).hasSize(1);
+  }
+
+  @Test
+  void shouldFailForWrongPassword() throws Exception {
+    KeyStore source = keyStore("PKCS12");
+    source.setCertificateEntry("one", x509);
+    byte[] file = write(source, TrustStoreFile.Format.PKCS12);
+
+    CertificateException exception = assertThrows(
+      CertificateException.class,
+      () -> TrustStoreFile.read(new ByteArrayInputStream(file), "wrong".toCharArray())
+    );
+
+    assertThat(exception).hasMessage("File is not a valid trust store or the password is wrong");
+  }
+
+  @Test
+  void shouldFailForInvalidFile() {
+    byte[] file = "hitchhiker".getBytes();
+
+    assertThrows(CertificateException.class, () -> TrustStoreFile.read(new ByteArrayInputStream(file), PASSWORD));
+  }
+
+  @Test
+  void shouldFailForTooLargeFile() {
+    byte[] file = new byte[TrustStoreFile.IMPORT_LIMIT_BYTES + 1];
+
+    CertificateException exception = assertThrows(
+      CertificateException.class,
+      () -> TrustStoreFile.read(new ByteArrayInputStream(file), PASSWORD)
+    );
+
+    assertThat(exception).hasMessage("File is larger than " + TrustStoreFile.IMPORT_LIMIT_BYTES + " bytes");
+  }
+
+  @Test
+  void shouldReadKeyStoreWithPrivateKeys() throws Exception {
+    KeyStore source = keyStore("JKS");
+    source.setKeyEntry("key", keyPair.getPrivate(), PASSWORD, new java.security.cert.Certificate[]{x509});
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    source.store(output, PASSWORD);
+
+    KeyStore keyStore = TrustStoreFile.readKeyStore(new ByteArrayInputStream(output.toByteArray()), PASSWORD);
+
+    assertThat(keyStore.getType()).isEqualTo("JKS");
+    assertThat(keyStore.isKeyEntry("key")).isTrue();
+  }
+
+  @Test
+  void shouldFailToReadKeyStoreForWrongPassword() throws Exception {
+    byte[] file = write(keyStore("PKCS12"), TrustStoreFile.Format.PKCS12);
+
+    CertificateException exception = assertThrows(
+      CertificateException.class,
+      () -> TrustStoreFile.readKeyStore(new ByteArrayInputStream(file), "wrong".toCharArray())
+    );
+
+    assertThat(exception).hasMessage("File is not a valid key store or the password is wrong");
+  }
+
+  @Test
+  void shouldParseFormat() {
+    assertThat(TrustStoreFile.Format.parse("pkcs12")).contains(TrustStoreFile.Format.PKCS12);
+    assertThat(TrustStoreFile.Format.parse("JKS")).contains(TrustStoreFile.Format.JKS);
+    assertThat(TrustStoreFile.Format.parse("pem")).isEmpty();
+  }
+
+  private KeyStore keyStore(String type) throws GeneralSecurityException, IOException {
+    KeyStore keyStore = KeyStore.getInstance(type);
+    keyStore.load(null, PASSWORD);
+    return keyStore;
+  }
+
+  private byte[] write(KeyStore source, TrustStoreFile.Format format) throws GeneralSecurityException, IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TrustStoreFile.write(source, format, PASSWORD, output);
+    return output.toByteArray();
+  }
+}
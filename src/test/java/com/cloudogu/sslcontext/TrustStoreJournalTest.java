@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import com.google.common.io.Resources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sonia.scm.store.Blob;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+class TrustStoreJournalTest {
+
+  private static final char[] PASSWORD = "secret".toCharArray();
+
+  private InMemoryBlobStore blobStore;
+
+  private Certificate certificate;
+
+  @BeforeEach
+  @SuppressWarnings("UnstableApiUsage")
+  void setUp() throws IOException {
+    blobStore = new InMemoryBlobStore();
+    certificate = new Certificate(
+      Resources.toByteArray(Resources.getResource("com/cloudogu/sslcontext/cert-001")),
+      Certificate.Error.UNKNOWN
+    );
+  }
+
+  @Test
+  void shouldLoadEmptyKeyStore() throws GeneralSecurityException, IOException {
+    KeyStore keyStore = new TrustStoreJournal(blobStore, PASSWORD).load();
+
+    assertThat(keyStore.size()).isZero();
+  }
+
+  @Test
+  void shouldReplayJournal() throws GeneralSecurityException, IOException {
+    TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+    journal.load();
+    journal.append(Collections.singletonList(add()));
+
+    KeyStore keyStore = new TrustStoreJournal(blobStore, PASSWORD).load();
+
+    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldReplayRemoval() throws GeneralSecurityException, IOException {
+    TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+    journal.load();
+    journal.append(Collections.singletonList(add()));
+    journal.append(Collections.singletonList(TrustStoreJournal.Operation.remove(certificate.getFingerprint())));
+
+    KeyStore keyStore = new TrustStoreJournal(blobStore, PASSWORD).load();
+
+    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isFalse();
+  }
+
+  @Test
+  void shouldCompactJournal() throws GeneralSecurityException, IOException {
+    TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+    journal.load();
+    journal.append(Collections.singletonList(add()));
+    journal.append(Collections.singletonList(add()));
+    assertThat(journal.size()).isEqualTo(2);
+
+    journal.compact(new TrustStoreJournal(blobStore, PASSWORD).load());
+
+    assertThat(journal.size()).isZero();
+    assertThat(blobStore.getAll()).extracting(Blob::getId).containsExactly("snapshot-0000000000000000003");
+    KeyStore keyStore = new TrustStoreJournal(blobStore, PASSWORD).load();
+    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldWriteAgainAfterFailedAppend() throws GeneralSecurityException, IOException {
+    FailingBlobStore failingStore = new FailingBlobStore();
+    TrustStoreJournal journal = new TrustStoreJournal(failingStore, PASSWORD);
+    journal.load();
+
+    failingStore.failNextWrite = true;
+    assertThrows(IOException.class, () -> journal.append(Collections.singletonList(add())));
+    assertThat(failingStore.getAll()).isEmpty();
+
+    journal.append(Collections.singletonList(add()));
+
+    KeyStore keyStore = new TrustStoreJournal(failingStore, PASSWORD).load();
+    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldWriteAgainAfterFailedCompaction() throws GeneralSecurityException, IOException {
+    FailingBlobStore failingStore = new FailingBlobStore();
+    TrustStoreJournal journal = new TrustStoreJournal(failingStore, PASSWORD);
+    journal.load();
+    journal.append(Collections.singletonList(add()));
+    KeyStore keyStore = new TrustStoreJournal(failingStore, PASSWORD).load();
+
+    failingStore.failNextWrite = true;
+    assertThrows(IOException.class, () -> journal.compact(keyStore));
+
+    journal.compact(keyStore);
+
+    assertThat(failingStore.getAll()).extracting(Blob::getId).containsExactly("snapshot-0000000000000000003");
+    assertThat(new TrustStoreJournal(failingStore, PASSWORD).load().containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldLoadLegacyKeyStore() throws GeneralSecurityException, IOException {
+    KeyStore legacy = KeyStore.getInstance("JKS");
+    legacy.load(null, PASSWORD);
+    legacy.setCertificateEntry(certificate.getFingerprint(), certificate.toX509());
+    try (OutputStream os = blobStore.create(TrustStoreJournal.LEGACY_SNAPSHOT).getOutputStream()) {
+      legacy.store(os, PASSWORD);
+    }
+
+    TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+    KeyStore keyStore = journal.load();
+
+    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+    assertThat(keyStore.getType()).isEqualTo(TrustStoreJournal.KEY_STORE_TYPE);
+    assertThat(journal.isLegacy()).isTrue();
+  }
+
+  @Test
+  void shouldLoadLegacyPkcs12Snapshot() throws GeneralSecurityException, IOException {
+    KeyStore legacy = KeyStore.getInstance("PKCS12");
+    legacy.load(null, PASSWORD);
+    legacy.setCertificateEntry(certificate.getFingerprint(), certificate.toX509());
+    try (OutputStream os = blobStore.create("snapshot-0000000000000000001").getOutputStream()) {
+      legacy.store(os, PASSWORD);
+    }
+
+    TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+    KeyStore keyStore = journal.load();
+
+    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+    assertThat(journal.isLegacy()).isTrue();
+  }
+
+  @Test
+  void shouldConvertLegacyKeyStoreWithCompaction() throws GeneralSecurityException, IOException {
+    KeyStore legacy = KeyStore.getInstance("JKS");
+    legacy.load(null, PASSWORD);
+    legacy.setCertificateEntry(certificate.getFingerprint(), certificate.toX509());
+    try (OutputStream os = blobStore.create(TrustStoreJournal.LEGACY_SNAPSHOT).getOutputStream()) {
+      legacy.store(os, PASSWORD);
+    }
+    TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+
+    journal.compact(journal.load());
+
+    assertThat(journal.isLegacy()).isFalse();
+    assertThat(blobStore.getAll()).extracting(Blob::getId).containsExactly("snapshot-0000000000000000001");
+    TrustStoreJournal reloaded = new TrustStoreJournal(blobStore, "other".toCharArray());
+    assertThat(reloaded.load().containsAlias(certificate.getFingerprint())).isTrue();
+    assertThat(reloaded.isLegacy()).isFalse();
+  }
+
+  @Test
+  void shouldFallBackToOlderSnapshot() throws GeneralSecurityException, IOException {
+    TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+    journal.compact(journal.load());
+    journal.append(Collections.singletonList(add()));
+    write("snapshot-0000000000000000003", "truncated".getBytes());
+
+    TrustStoreJournal reloaded = new TrustStoreJournal(blobStore, PASSWORD);
+    KeyStore keyStore = reloaded.load();
+
+    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+    reloaded.append(Collections.singletonList(add()));
+    assertThat(blobStore.get("journal-0000000000000000004")).isNotNull();
+  }
+
+  @Test
+  void shouldIgnoreBrokenJournalRecord() throws GeneralSecurityException, IOException {
+    TrustStoreJournal journal = new TrustStoreJournal(blobStore, PASSWORD);
+    journal.load();
+    journal.append(Collections.singletonList(add()));
+    write("journal-0000000000000000002", new byte[]{0, 0});
+
+    TrustStoreJournal reloaded = new TrustStoreJournal(blobStore, PASSWORD);
+    KeyStore keyStore = reloaded.load();
+
+    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+    reloaded.append(Collections.singletonList(TrustStoreJournal.Operation.remove(certificate.getFingerprint())));
+    assertThat(blobStore.get("journal-0000000000000000003")).isNotNull();
+    assertThat(new TrustStoreJournal(blobStore, PASSWORD).load().containsAlias(certificate.getFingerprint())).isFalse();
+  }
+
+  private TrustStoreJournal.Operation add() {
+    return TrustStoreJournal.Operation.add(certificate.getFingerprint(), certificate.getEncoded());
+  }
+
+  private void write(String id, byte[] content) throws IOException {
+    try (OutputStream os = blobStore.create(id).getOutputStream()) {
+      os.write(content);
+    }
+  }
+
+  /**
+   * Rejects existing ids like the file blob store and fails the write of a blob on demand.
+   */
+  private static class FailingBlobStore extends InMemoryBlobStore {
+
+    private boolean failNextWrite = false;
+
+    @Override
+    public Blob create(String id) {
+      if (get(id) != null) {
+        throw new IllegalStateException("blob " + id + " already exists");
+      }
+      Blob blob = super.create(id);
+      if (failNextWrite) {
+        failNextWrite = false;
+        Blob failing = mock(Blob.class);
+        lenient().when(failing.getId()).thenReturn(id);
+        try {
+          lenient().when(failing.getOutputStream()).thenThrow(new IOException("disk full"));
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+        return failing;
+      }
+      return blob;
+    }
+
+    @Override
+    public void remove(Blob blob) {
+      remove(blob.getId());
+    }
+  }
+}
@@ -17,47 +17,270 @@
 package com.cloudogu.sslcontext;
 
 import com.google.common.io.Resources;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import sonia.scm.store.Blob;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class TrustedCertificatesStoreTest {
 
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private InMemoryBlobStore blobStore;
   private TrustedCertificatesStore store;
 
   @BeforeEach
   void initStore() {
-    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(new InMemoryBlobStore()));
+    blobStore = new InMemoryBlobStore();
+    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry);
   }
 
   @Test
   void shouldAddTrustedCertToKeyStore() throws IOException, KeyStoreException {
     Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
-    KeyStore keyStore = store.getKeyStore();
 
-    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isFalse();
+    assertThat(store.getKeyStore().containsAlias(certificate.getFingerprint())).isFalse();
 
     store.add(certificate);
 
-    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+    assertThat(store.getKeyStore().containsAlias(certificate.getFingerprint())).isTrue();
   }
 
   @Test
   void shouldRemoveTrustedCertFromKeyStore() throws IOException, KeyStoreException {
     Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
-    KeyStore keyStore = store.getKeyStore();
 
     store.add(certificate);
-    assertThat(keyStore.containsAlias(certificate.getFingerprint())).isTrue();
+    assertThat(store.getKeyStore().containsAlias(certificate.getFingerprint())).isTrue();
 
     store.remove(certificate);
+    assertThat(store.getKeyStore().containsAlias(certificate.getFingerprint())).isFalse();
+  }
+
+  @Test
+  void shouldNotModifyPublishedKeyStore() throws IOException, KeyStoreException {
+    Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
+    KeyStore keyStore = store.getKeyStore();
+
+    store.add(certificate);
+
     assertThat(keyStore.containsAlias(certificate.getFingerprint())).isFalse();
+    assertThat(store.getKeyStore()).isNotSameAs(keyStore);
+  }
+
+  @Test
+  void shouldNotifyListenersWithNewKeyStore() throws IOException, KeyStoreException {
+    Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
+    AtomicReference<KeyStore> notified = new AtomicReference<>();
+    store.onChange(notified::set);
+
+    store.add(certificate);
+
+    assertThat(notified.get()).isSameAs(store.getKeyStore());
+    assertThat(notified.get().containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldApplyBatchWithSingleNotification() throws IOException, KeyStoreException {
+    Certificate first = readCertificate("com/cloudogu/sslcontext/cert-001");
+    Certificate second = readCertificate("com/cloudogu/sslcontext/cert-002-expired");
+    List<KeyStore> notifications = new ArrayList<>();
+    store.onChange(notifications::add);
+
+    store.batch(transaction -> {
+      transaction.add(first);
+      transaction.add(second);
+    });
+
+    assertThat(notifications).hasSize(1);
+    assertThat(store.getKeyStore().containsAlias(first.getFingerprint())).isTrue();
+    assertThat(store.getKeyStore().containsAlias(second.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldNotApplyFailedBatch() throws IOException, KeyStoreException {
+    Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
+    Certificate invalid = new Certificate("hitchhiker".getBytes(), Certificate.Error.UNKNOWN);
+
+    assertThrows(CertificateException.class, () -> store.batch(transaction -> {
+      transaction.add(certificate);
+      transaction.add(invalid);
+    }));
+
+    assertThat(store.getKeyStore().containsAlias(certificate.getFingerprint())).isFalse();
+  }
+
+  @Test
+  void shouldKeepStoredChangeIfListenerFails() throws IOException, KeyStoreException {
+    Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
+    List<KeyStore> notifications = new ArrayList<>();
+    store.onChange(keyStore -> {
+      throw new IllegalStateException("failing listener");
+    });
+    store.onChange(notifications::add);
+
+    store.add(certificate);
+
+    assertThat(notifications).hasSize(1);
+    assertThat(store.getKeyStore().containsAlias(certificate.getFingerprint())).isTrue();
+    TrustedCertificatesStore reloaded = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry);
+    assertThat(reloaded.getKeyStore().containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldNotNotifyWithoutModification() throws IOException {
+    Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
+    List<KeyStore> notifications = new ArrayList<>();
+    store.onChange(notifications::add);
+
+    store.remove(certificate);
+
+    assertThat(notifications).isEmpty();
+  }
+
+  @Test
+  void shouldDebounceNotifications() throws IOException, KeyStoreException {
+    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(new InMemoryBlobStore()), meterRegistry, Duration.ofHours(1));
+    Certificate first = readCertificate("com/cloudogu/sslcontext/cert-001");
+    Certificate second = readCertificate("com/cloudogu/sslcontext/cert-002-expired");
+    List<KeyStore> notifications = new ArrayList<>();
+    store.onChange(notifications::add);
+
+    store.add(first);
+    store.add(second);
+
+    assertThat(notifications).isEmpty();
+    assertThat(store.getKeyStore().containsAlias(second.getFingerprint())).isTrue();
+
+    store.flush();
+
+    assertThat(notifications).hasSize(1);
+    assertThat(notifications.get(0).containsAlias(first.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldPersistPendingChangesOnClose() throws IOException, KeyStoreException {
+    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry, Duration.ofHours(1));
+    Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
+    store.add(certificate);
+
+    store.close();
+
+    TrustedCertificatesStore reloaded = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry);
+    assertThat(reloaded.getKeyStore().containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldPersistChangesAfterCloseImmediately() throws IOException, KeyStoreException {
+    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry, Duration.ofHours(1));
+    store.close();
+
+    Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
+    store.add(certificate);
+
+    TrustedCertificatesStore reloaded = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry);
+    assertThat(reloaded.getKeyStore().containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldLoadPersistedChanges() throws IOException, KeyStoreException {
+    Certificate first = readCertificate("com/cloudogu/sslcontext/cert-001");
+    Certificate second = readCertificate("com/cloudogu/sslcontext/cert-002-expired");
+    store.add(first);
+    store.add(second);
+    store.remove(first);
+
+    TrustedCertificatesStore reloaded = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry);
+
+    assertThat(reloaded.getKeyStore().containsAlias(first.getFingerprint())).isFalse();
+    assertThat(reloaded.getKeyStore().containsAlias(second.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldAppendChangesToJournal() throws IOException {
+    store.add(readCertificate("com/cloudogu/sslcontext/cert-001"));
+    store.add(readCertificate("com/cloudogu/sslcontext/cert-002-expired"));
+
+    assertThat(blobStore.getAll())
+      .extracting(Blob::getId)
+      .allMatch(id -> id.startsWith(TrustStoreJournal.JOURNAL_PREFIX))
+      .hasSize(2);
+  }
+
+  @Test
+  void shouldCompactJournal() throws IOException, KeyStoreException {
+    Certificate certificate = readCertificate("com/cloudogu/sslcontext/cert-001");
+    store.add(certificate);
+
+    store.compact();
+
+    assertThat(blobStore.getAll())
+      .extracting(Blob::getId)
+      .allMatch(id -> id.startsWith(TrustStoreJournal.SNAPSHOT_PREFIX))
+      .hasSize(1);
+    TrustedCertificatesStore reloaded = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry);
+    assertThat(reloaded.getKeyStore().containsAlias(certificate.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldWriteSnapshotWithoutJournal() throws IOException {
+    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry, Duration.ZERO, 0);
+
+    store.add(readCertificate("com/cloudogu/sslcontext/cert-001"));
+    store.add(readCertificate("com/cloudogu/sslcontext/cert-002-expired"));
+
+    assertThat(blobStore.getAll())
+      .extracting(Blob::getId)
+      .allMatch(id -> id.startsWith(TrustStoreJournal.SNAPSHOT_PREFIX))
+      .hasSize(1);
+  }
+
+  @Test
+  void shouldConvertLegacyKeyStoreOnFirstWrite() throws Exception {
+    Certificate first = readCertificate("com/cloudogu/sslcontext/cert-001");
+    Certificate second = readCertificate("com/cloudogu/sslcontext/cert-002-expired");
+    KeyStore legacy = KeyStore.getInstance("JKS");
+    legacy.load(null, "password".toCharArray());
+    legacy.setCertificateEntry(first.getFingerprint(), first.toX509());
+    try (OutputStream os = blobStore.create(TrustStoreJournal.LEGACY_SNAPSHOT).getOutputStream()) {
+      legacy.store(os, "password".toCharArray());
+    }
+    store = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry);
+
+    store.add(second);
+
+    assertThat(blobStore.getAll())
+      .extracting(Blob::getId)
+      .allMatch(id -> id.startsWith(TrustStoreJournal.SNAPSHOT_PREFIX))
+      .hasSize(1);
+    TrustedCertificatesStore reloaded = new TrustedCertificatesStore(new InMemoryBlobStoreFactory(blobStore), meterRegistry);
+    assertThat(reloaded.getKeyStore().containsAlias(first.getFingerprint())).isTrue();
+    assertThat(reloaded.getKeyStore().containsAlias(second.getFingerprint())).isTrue();
+  }
+
+  @Test
+  void shouldRecordMetrics() throws IOException {
+    store.add(readCertificate("com/cloudogu/sslcontext/cert-001"));
+    store.add(readCertificate("com/cloudogu/sslcontext/cert-002-expired"));
+    store.compact();
+
+    assertThat(meterRegistry.get("sslcontext.trust.store.load").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("sslcontext.trust.store.persist").tag("operation", "append").timer().count()).isEqualTo(2);
+    assertThat(meterRegistry.get("sslcontext.trust.store.persist").tag("operation", "compact").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("sslcontext.certificates").tag("status", "trusted").gauge().value()).isEqualTo(2);
   }
 
   @SuppressWarnings("UnstableApiUsage")
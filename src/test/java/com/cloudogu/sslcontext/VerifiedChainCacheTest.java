@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.sslcontext;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static com.cloudogu.sslcontext.CertTestUtil.createKeyPair;
+import static com.cloudogu.sslcontext.CertTestUtil.createX509Cert;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class VerifiedChainCacheTest {
+
+  private final Instant now = Instant.now();
+
+  @Mock
+  private Clock clock;
+
+  private VerifiedChainCache cache;
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(clock.instant()).thenReturn(now);
+    cache = new VerifiedChainCache(new SimpleMeterRegistry(), clock, 10, Duration.ofMinutes(30));
+  }
+
+  @Test
+  void shouldReturnVerifiedChain() throws GeneralSecurityException {
+    X509Certificate[] chain = createChain(now.plus(1, ChronoUnit.DAYS));
+    String key = VerifiedChainCache.key(chain, "RSA");
+
+    assertThat(cache.isVerified(key, 1)).isFalse();
+    cache.verified(key, 1, chain);
+    assertThat(cache.isVerified(key, 1)).isTrue();
+
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotReturnChainVerifiedWithOtherVersion() throws GeneralSecurityException {
+    X509Certificate[] chain = createChain(now.plus(1, ChronoUnit.DAYS));
+    String key = VerifiedChainCache.key(chain, "RSA");
+    cache.verified(key, 1, chain);
+
+    assertThat(cache.isVerified(key, 2)).isFalse();
+  }
+
+  @Test
+  void shouldUseAuthTypeForKey() throws GeneralSecurityException {
+    X509Certificate[] chain = createChain(now.plus(1, ChronoUnit.DAYS));
+
+    assertThat(VerifiedChainCache.key(chain, "RSA")).isNotEqualTo(VerifiedChainCache.key(chain, "ECDHE_RSA"));
+  }
+
+  @Test
+  void shouldExpireAfterTimeToLive() throws GeneralSecurityException {
+    X509Certificate[] chain = createChain(now.plus(1, ChronoUnit.DAYS));
+    String key = VerifiedChainCache.key(chain, "RSA");
+    cache.verified(key, 1, chain);
+
+    when(clock.instant()).thenReturn(now.plus(31, ChronoUnit.MINUTES));
+
+    assertThat(cache.isVerified(key, 1)).isFalse();
+  }
+
+  @Test
+  void shouldExpireWithCertificate() throws GeneralSecurityException {
+    X509Certificate[] chain = createChain(now.plus(5, ChronoUnit.MINUTES));
+    String key = VerifiedChainCache.key(chain, "RSA");
+    cache.verified(key, 1, chain);
+
+    when(clock.instant()).thenReturn(now.plus(6, ChronoUnit.MINUTES));
+
+    assertThat(cache.isVerified(key, 1)).isFalse();
+  }
+
+  @Test
+  void shouldInvalidate() throws GeneralSecurityException {
+    X509Certificate[] chain = createChain(now.plus(1, ChronoUnit.DAYS));
+    String key = VerifiedChainCache.key(chain, "RSA");
+    cache.verified(key, 1, chain);
+
+    cache.invalidate();
+
+    assertThat(cache.isVerified(key, 1)).isFalse();
+  }
+
+  private X509Certificate[] createChain(Instant notAfter) throws GeneralSecurityException {
+    return new X509Certificate[]{createX509Cert(createKeyPair(), now.minus(1, ChronoUnit.MINUTES), notAfter)};
+  }
+}